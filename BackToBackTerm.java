@@ -0,0 +1,20 @@
+package scheduler;
+
+/**
+ * Soft constraint: a student with two exams in consecutive slots of the same day (e.g. 8:30 and 12:00) costs 1 per such pair.
+ */
+public class BackToBackTerm extends StudentTerm {
+
+	public String getName() {
+		return "back-to-back";
+	}
+
+	public int studentPenalty(int[] pCells, int pCount, int pSlots) {
+		int pairs = 0;
+		for (int i = 0; i < pCount; i++)
+			for (int j = i + 1; j < pCount; j++)
+				if (pCells[i] / pSlots == pCells[j] / pSlots && Math.abs(pCells[i] - pCells[j]) == 1)
+					pairs++;
+		return pairs;
+	}
+}
@@ -0,0 +1,142 @@
+package scheduler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Solves a batch of small problems (thousands of per-department problems of the size Generator makes for Driver) with Scheduler1. Every
+ * problem is a task of its own: on a JVM with virtual threads (Java 21 and later) each task gets a virtual thread and all of them share one
+ * carrier pool, and the genetic algorithm gives its thread up after every generation (Scheduler1.yieldEveryLoop), so short and long solves
+ * take turns on the carriers. On older JVMs the tasks run on a ForkJoinPool with a thread per core, one after the other.
+ *
+ * At most MAX_IN_FLIGHT solves hold their buffers at the same time, however big the batch is; the others wait (a waiting virtual thread
+ * costs next to nothing).
+ */
+public class BatchSolver {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int MAX_IN_FLIGHT = 8 * Runtime.getRuntime().availableProcessors(); //Solves running at the same time.
+	final int MILLISECONDS_PER_SOLVE = 2000; //Time budget of a solve, counted from when it starts running.
+
+	private final boolean virtualThreads;
+	private final ExecutorService pool;
+	private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+	/* Statistics of the last batch: */
+	private int solved = 0;
+	private long totalViolations = 0;
+	private long elapsed = 0; //milliseconds
+
+	public BatchSolver() {
+		ExecutorService virtual = virtualThreadExecutor();
+		virtualThreads = virtual != null;
+		pool = virtualThreads ? virtual : new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Looks for Executors.newVirtualThreadPerTaskExecutor() by reflection, so the class still compiles and runs on JVMs without it.
+	 *
+	 * @return a virtual thread per task executor, or null if this JVM has no virtual threads
+	 */
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null; //Not there, or a preview feature that isn't enabled.
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Solves every problem and waits for all of them.
+	 *
+	 * @return the schedules, in the order of the problems
+	 * @throws IllegalStateException if a solve fails
+	 */
+	public ScheduleChoice[][] solveAll(final SchedulingProblem[] pProblems) {
+		long start = System.currentTimeMillis();
+		final ScheduleChoice[][] schedule = new ScheduleChoice[pProblems.length][];
+		final int[] violations = new int[pProblems.length];
+		Future<?>[] running = new Future<?>[pProblems.length];
+		for (int i = 0; i < pProblems.length; i++) {
+			final int problem = i;
+			running[i] = pool.submit(new Runnable() {
+				public void run() {
+					inFlight.acquireUninterruptibly();
+					try {
+						Scheduler1 scheduler = new Scheduler1();
+						scheduler.yieldEveryLoop = true;
+						scheduler.stopAt = System.currentTimeMillis() + MILLISECONDS_PER_SOLVE;
+						schedule[problem] = scheduler.schedule(pProblems[problem]);
+						violations[problem] = scheduler.getViolations(pProblems[problem], schedule[problem]);
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+		}
+		try {
+			for (Future<?> f : running)
+				f.get();
+		} catch (Exception e) {
+			for (Future<?> f : running)
+				f.cancel(true);
+			throw new IllegalStateException("Batch solve failed", e);
+		}
+
+		elapsed = System.currentTimeMillis() - start;
+		solved = pProblems.length;
+		totalViolations = 0;
+		for (int v : violations)
+			totalViolations += v;
+		return schedule;
+	}
+
+	/**
+	 * @return the problems of the last batch solved per second
+	 */
+	public double getSolvesPerSecond() {
+		return elapsed == 0 ? 0 : solved * 1000.0 / elapsed;
+	}
+
+	/**
+	 * @return how big the last batch was, how long it took, its throughput and its violations.
+	 */
+	public String throughputReport() {
+		return solved + " problems in " + elapsed + " ms on " + (virtualThreads ? "virtual threads" : "a ForkJoinPool") + ": "
+				+ String.format("%.1f", getSolvesPerSecond()) + " solves per second, " + totalViolations + " violations in total.";
+	}
+
+	/**
+	 * Stops the pool. Solves in progress are interrupted.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Solves a batch of Driver's easy problems.
+	 *
+	 * @param args the number of problems (optional, 1000 if not given)
+	 */
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		Generator departments = new Generator(40, 2, 500, 0.95);
+		SchedulingProblem[] problems = new SchedulingProblem[count];
+		for (int i = 0; i < count; i++)
+			problems[i] = departments.generateProblem(i);
+
+		BatchSolver batch = new BatchSolver();
+		batch.solveAll(problems);
+		System.out.println(batch.throughputReport());
+		batch.shutdown();
+	}
+}
@@ -0,0 +1,356 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An exact Scheduler: depth-first branch and bound over the time cells of every course. It only looks at schedules without room clashes (the ones
+ * the Evaluator accepts), and among those it finds the one with the best MyEvaluator score, or proves that the incumbent is already the best.
+ *
+ * Rooms at the same time are interchangeable as far as students are concerned, so the search gives each course a time cell with a free room
+ * and hands out the rooms at the end. The free time cells and the domain of every course are bitsets. At every node:
+ * <UL>
+ * <LI>every unassigned course gets the cheapest marginal cost it could still have (marginal costs only grow as more courses are placed), and the
+ * node is pruned if the cost so far plus those minimums can't beat the incumbent;
+ * <LI>forward checking removes from each domain the cells that would push the bound over the incumbent; an empty domain prunes the node;
+ * <LI>the course with the smallest domain is branched on (ties go to the one with more conflicts), cheapest cells first.
+ * </UL>
+ * The incumbent comes from a short tabu search. The top of the tree is split into many small sub-trees that run on all cores, sharing the
+ * incumbent.
+ */
+public class BranchAndBoundScheduler implements Scheduler {
+
+	/**
+	 * @see scheduler.Scheduler#authors()
+	 */
+	public String authors() {
+		return "Rodrigo Alves (ID: 15674112)";
+	}
+
+	/*
+	 * Constants to play with:
+	 */
+	final int HALT_AFTER_SECONDS = 60; //Give up proving optimality after that time and return the best schedule found.
+	final int HEURISTIC_SECONDS = 2; //Tabu search time for the first incumbent.
+	final int THREADS = Runtime.getRuntime().availableProcessors();
+	final int TASKS_PER_THREAD = 16; //Split the top of the tree until there are this many sub-trees per thread...
+	final int MAX_SPLIT_DEPTH = 6; //...or until this depth.
+
+	/*
+	 * Other variables:
+	 */
+	EvaluationContext context;
+	AtomicInteger incumbent; //Score of the best schedule found so far, shared by all threads.
+	int[] incumbentCell; //Time cell of every course in the best schedule found by the search (null while it's the heuristic's).
+	ScheduleChoice[] heuristicSolution;
+	volatile boolean timedOut = false;
+	long deadline;
+	AtomicInteger nodes = new AtomicInteger(); //Nodes explored in the last run (in thousands).
+	boolean provenOptimal = false; //True if the last run explored the whole tree.
+
+	/**
+	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
+	 */
+	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		context = EvaluationContext.forProblem(pProblem);
+		deadline = System.currentTimeMillis() + HALT_AFTER_SECONDS * 1000L;
+		timedOut = false;
+		provenOptimal = false;
+		incumbentCell = null;
+		nodes.set(0);
+
+		/* A good first incumbent makes most of the tree go away: */
+		TabuSearchScheduler heuristic = new TabuSearchScheduler();
+		IncrementalSchedule start = new IncrementalSchedule(context);
+		start.randomize(heuristic.r);
+		heuristicSolution = heuristic.search(start, System.currentTimeMillis() + HEURISTIC_SECONDS * 1000L);
+		incumbent = new AtomicInteger(heuristic.violationsForBestSoFar);
+
+		if (heuristic.lowerBound.isOptimal(incumbent.get())) {
+			provenOptimal = true;
+			return heuristicSolution;
+		}
+		if (context.getCourseCount() > context.getRoomCount() * context.openCells.length)
+			return heuristicSolution; //Every schedule has room clashes (or exams in blocked cells), nothing to search here.
+		if (!context.objective.isEmpty())
+			return heuristicSolution; //The bounds and the symmetry breaking below only know about hard constraints.
+		if (context.hasCapacities)
+			return heuristicSolution; //Rooms with seats are not interchangeable, so handing them out at the end doesn't work.
+
+		/* Split the top of the tree into sub-trees: */
+		ArrayList<int[]> frontier = new ArrayList<int[]>();
+		frontier.add(new int[0]);
+		Search splitter = new Search();
+		for (int depth = 0; depth < MAX_SPLIT_DEPTH && frontier.size() < THREADS * TASKS_PER_THREAD; depth++) {
+			ArrayList<int[]> next = new ArrayList<int[]>();
+			for (int[] prefix : frontier) {
+				splitter.replay(prefix);
+				if (splitter.assigned == context.getCourseCount()) {
+					splitter.dfs(0); //A complete schedule, just record it.
+					continue;
+				}
+				int total = splitter.branch(0);
+				for (int v = 0; v < total; v++) {
+					int[] child = Arrays.copyOf(prefix, prefix.length + 2);
+					child[prefix.length] = splitter.branchCourse[0];
+					child[prefix.length + 1] = splitter.values[0][v];
+					next.add(child);
+				}
+			}
+			frontier = next;
+		}
+
+		/* Solve the sub-trees on all cores: */
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+			for (final int[] prefix : frontier) {
+				running.add(pool.submit(new Runnable() {
+					public void run() {
+						Search search = localSearch.get();
+						search.replay(prefix);
+						search.dfs(0);
+					}
+				}));
+			}
+			for (Future<?> f : running)
+				f.get();
+		} catch (Exception e) {
+			throw new IllegalStateException("Branch and bound failed", e);
+		} finally {
+			pool.shutdownNow();
+		}
+		provenOptimal = !timedOut;
+
+		synchronized (this) {
+			if (incumbentCell == null)
+				return heuristicSolution;
+			return toChoices(incumbentCell);
+		}
+	}
+
+	/**
+	 * One Search per thread, reused by all the sub-trees the thread runs.
+	 */
+	private final ThreadLocal<Search> localSearch = new ThreadLocal<Search>() {
+		protected Search initialValue() {
+			return new Search();
+		}
+	};
+
+	/**
+	 * Gives the rooms out in order inside every time cell.
+	 */
+	private ScheduleChoice[] toChoices(int[] cell) {
+		Course[] course = context.getProblem().getCourseList();
+		Room[] room = context.getProblem().getRoomList();
+		int[] used = new int[context.timeCells];
+		ScheduleChoice[] choice = new ScheduleChoice[course.length];
+		for (int c = 0; c < course.length; c++)
+			choice[c] = new ScheduleChoice(course[c], room[used[cell[c]]++], cell[c] / context.slots, cell[c] % context.slots);
+		return choice;
+	}
+
+	private synchronized void offer(int pScore, int[] pCell) {
+		if (pScore < incumbent.get()) {
+			incumbent.set(pScore);
+			incumbentCell = pCell.clone();
+		}
+	}
+
+	/**
+	 * The state of one depth-first search. Not thread-safe.
+	 */
+	private class Search {
+		final int courses = context.getCourseCount();
+		final int cells = context.timeCells;
+		final int words = (cells + 63) / 64;
+		final int rooms = context.getRoomCount();
+
+		final int[] cell = new int[courses]; //Time cell of each course, -1 if not assigned yet.
+		final int[] used = new int[cells]; //Exams in each time cell.
+		final long[] free = new long[words]; //Time cells with a free room.
+		final byte[][] count = new byte[context.getStudentCount()][cells]; //Exams of each student in each time cell.
+		final int[][] marginal = new int[courses][cells]; //Exact cost of putting an unassigned course in a time cell now.
+		int partial = 0; //Cost of the courses assigned so far.
+		int assigned = 0;
+
+		final int[] minimum = new int[courses]; //Scratch: the cheapest marginal cost of each unassigned course.
+		final long[][] domain = new long[courses][words]; //Scratch: the cells left for each unassigned course.
+		final int[] branchCourse = new int[courses + 1]; //The course branched on at each depth.
+		final int[] othersBound = new int[courses + 1]; //What the courses not branched on still cost at least, at each depth.
+		final int[][] values = new int[courses + 1][cells]; //The cells to try at each depth, cheapest first.
+		int localNodes = 0;
+
+		Search() {
+			reset();
+		}
+
+		void reset() {
+			Arrays.fill(cell, -1);
+			Arrays.fill(used, 0);
+			Arrays.fill(free, 0);
+			for (int t : context.openCells)
+				free[t >> 6] |= 1L << t; //Blocked cells never have a free room.
+			for (int[] row : marginal)
+				Arrays.fill(row, 0);
+			for (byte[] row : count)
+				Arrays.fill(row, (byte) 0);
+			partial = 0;
+			assigned = 0;
+		}
+
+		/**
+		 * Resets the search and assigns the (course, cell) pairs of the prefix.
+		 */
+		void replay(int[] prefix) {
+			reset();
+			for (int i = 0; i < prefix.length; i += 2)
+				assign(prefix[i], prefix[i + 1]);
+		}
+
+		void assign(int c, int t) {
+			partial += marginal[c][t];
+			for (int s : context.courseStudents[c]) {
+				int k = count[s][t];
+				int change = context.studentWeight[s] * ((EvaluationContext.PENALTY[k + 2] - EvaluationContext.PENALTY[k + 1])
+						- (EvaluationContext.PENALTY[k + 1] - EvaluationContext.PENALTY[k]));
+				for (int u : context.studentCourses[s])
+					if (u != c && cell[u] < 0)
+						marginal[u][t] += change;
+				count[s][t]++;
+			}
+			cell[c] = t;
+			assigned++;
+			if (++used[t] == rooms)
+				free[t >> 6] &= ~(1L << t);
+		}
+
+		void unassign(int c) {
+			int t = cell[c];
+			if (used[t]-- == rooms)
+				free[t >> 6] |= 1L << t;
+			cell[c] = -1;
+			assigned--;
+			for (int s : context.courseStudents[c]) {
+				int k = --count[s][t];
+				int change = context.studentWeight[s] * ((EvaluationContext.PENALTY[k + 2] - EvaluationContext.PENALTY[k + 1])
+						- (EvaluationContext.PENALTY[k + 1] - EvaluationContext.PENALTY[k]));
+				for (int u : context.studentCourses[s])
+					if (u != c && cell[u] < 0)
+						marginal[u][t] -= change;
+			}
+			partial -= marginal[c][t];
+		}
+
+		/**
+		 * Bounds the current node, runs forward checking and picks the next course.
+		 *
+		 * @return how many cells to try for branchCourse[depth] (in values[depth]); 0 if the node is pruned.
+		 */
+		int branch(int depth) {
+			int best = incumbent.get();
+
+			/* The cheapest each unassigned course can still cost: */
+			long restBound = 0;
+			for (int u = 0; u < courses; u++) {
+				if (cell[u] >= 0)
+					continue;
+				int min = Integer.MAX_VALUE;
+				for (int w = 0; w < words; w++)
+					for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+						int t = (w << 6) + Long.numberOfTrailingZeros(bits);
+						min = Math.min(min, marginal[u][t]);
+					}
+				minimum[u] = min;
+				restBound += min;
+			}
+			if (partial + restBound >= best)
+				return 0;
+
+			/* Forward checking, and the course with the fewest cells left: */
+			int chosen = -1;
+			int chosenSize = Integer.MAX_VALUE;
+			for (int u = 0; u < courses; u++) {
+				if (cell[u] >= 0)
+					continue;
+				long others = partial + restBound - minimum[u];
+				int size = 0;
+				for (int w = 0; w < words; w++) {
+					long bits = free[w];
+					for (long scan = bits; scan != 0; scan &= scan - 1) {
+						int t = (w << 6) + Long.numberOfTrailingZeros(scan);
+						if (others + marginal[u][t] >= best)
+							bits &= ~(1L << t);
+					}
+					domain[u][w] = bits;
+					size += Long.bitCount(bits);
+				}
+				if (size == 0)
+					return 0;
+				if (size < chosenSize || (size == chosenSize && context.neighbours[u].length > context.neighbours[chosen].length)) {
+					chosen = u;
+					chosenSize = size;
+				}
+			}
+
+			/*
+			 * MyEvaluator treats all time cells the same, so all the empty ones are interchangeable:
+			 * only the first empty cell is worth trying.
+			 */
+			int total = 0;
+			boolean emptyTried = false;
+			for (int w = 0; w < words; w++)
+				for (long bits = domain[chosen][w]; bits != 0; bits &= bits - 1) {
+					int t = (w << 6) + Long.numberOfTrailingZeros(bits);
+					if (used[t] == 0) {
+						if (emptyTried)
+							continue;
+						emptyTried = true;
+					}
+					/* Insertion sort, cheapest first: */
+					int i = total++;
+					while (i > 0 && marginal[chosen][values[depth][i - 1]] > marginal[chosen][t]) {
+						values[depth][i] = values[depth][i - 1];
+						i--;
+					}
+					values[depth][i] = t;
+				}
+			branchCourse[depth] = chosen;
+			othersBound[depth] = (int) (restBound - minimum[chosen]);
+			return total;
+		}
+
+		void dfs(int depth) {
+			if (timedOut)
+				return;
+			if ((++localNodes & 1023) == 0) {
+				nodes.incrementAndGet();
+				if (System.currentTimeMillis() > deadline) {
+					timedOut = true;
+					return;
+				}
+			}
+			if (assigned == courses) {
+				if (partial < incumbent.get())
+					offer(partial, cell);
+				return;
+			}
+			int total = branch(depth);
+			int c = branchCourse[depth];
+			int others = othersBound[depth];
+			for (int v = 0; v < total; v++) {
+				int t = values[depth][v];
+				if (partial + marginal[c][t] + others >= incumbent.get())
+					break; //Sorted: the remaining cells are no better.
+				assign(c, t);
+				dfs(depth + 1);
+				unassign(c);
+			}
+		}
+	}
+}
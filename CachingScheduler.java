@@ -0,0 +1,67 @@
+package scheduler;
+
+/**
+ * This Scheduler looks a problem up in a SolutionStore before solving it. If the store's schedule is proven optimal (see LowerBound) it is
+ * the answer; otherwise a short tabu search starts from it instead of from scratch. Problems the store doesn't know are given to the wrapped
+ * Scheduler. Whatever comes out is offered back to the store, so the next run of the same instance starts from the best schedule so far.
+ */
+public class CachingScheduler implements Scheduler {
+
+	/**
+	 * @see scheduler.Scheduler#authors()
+	 */
+	public String authors() {
+		return "Rodrigo Alves (ID: 15674112)";
+	}
+
+	/*
+	 * Constants to play with:
+	 */
+	final int IMPROVE_SECONDS = 2; //Tabu search from a stored schedule that isn't proven optimal.
+
+	private final Scheduler scheduler;
+	private final SolutionStore store;
+
+	boolean lastWasHit = false; //The last problem was found in the store.
+	int violationsForBestSoFar = Integer.MAX_VALUE; //MyEvaluator score of the last schedule returned.
+
+	/**
+	 * @param pScheduler solves the problems the store doesn't know
+	 * @param pStore where the best schedules are kept
+	 */
+	public CachingScheduler(Scheduler pScheduler, SolutionStore pStore) {
+		scheduler = pScheduler;
+		store = pStore;
+	}
+
+	/**
+	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
+	 */
+	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		ProblemFingerprint fingerprint;
+		try {
+			fingerprint = new ProblemFingerprint(pProblem);
+		} catch (IllegalArgumentException e) {
+			/* Duplicate names: there is no canonical order to store a schedule in. */
+			lastWasHit = false;
+			return scheduler.schedule(pProblem);
+		}
+		EvaluationContext context = fingerprint.getContext();
+		IncrementalSchedule current = new IncrementalSchedule(context);
+
+		ScheduleChoice[] result = store.lookup(fingerprint);
+		lastWasHit = result != null;
+		if (lastWasHit) {
+			current.load(result);
+			if (!new LowerBound(context).isOptimal(current.score()))
+				result = new TabuSearchScheduler().search(current, System.currentTimeMillis() + IMPROVE_SECONDS * 1000L);
+		} else {
+			result = scheduler.schedule(pProblem);
+		}
+
+		current.load(result);
+		violationsForBestSoFar = current.score();
+		store.offer(fingerprint, result, violationsForBestSoFar);
+		return result;
+	}
+}
@@ -0,0 +1,122 @@
+package scheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The binary format of the engine checkpoints. A checkpoint is a header (magic number, version, engine and the ProblemFingerprint of the
+ * problem) followed by whatever the engine needs to continue its run. Schedules are stored in the canonical order of the fingerprint, 4 bytes
+ * per course, so a checkpoint can be resumed in another JVM with a freshly built copy of the same problem.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x45584d43; //"EXMC"
+	private static final short VERSION = 1;
+
+	static final byte GENETIC_ALGORITHM = 1;
+	static final byte SIMULATED_ANNEALING = 2;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * @return the bytes putHeader() needs.
+	 */
+	static int headerSize() {
+		return 4 + 2 + 1 + 32;
+	}
+
+	static void putHeader(ByteBuffer pBuffer, byte pEngine, ProblemFingerprint pFingerprint) {
+		pBuffer.putInt(MAGIC).putShort(VERSION).put(pEngine).put(pFingerprint.getDigest());
+	}
+
+	/**
+	 * Reads a checkpoint file and checks its header.
+	 *
+	 * @return the contents of the file, positioned right after the header
+	 * @throws IOException if the file can't be read or isn't a checkpoint of this engine for this problem
+	 */
+	static ByteBuffer read(String pPath, byte pEngine, ProblemFingerprint pFingerprint) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(pPath)));
+		if (buffer.remaining() < headerSize() || buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+			throw new IOException(pPath + " is not a checkpoint");
+		if (buffer.get() != pEngine)
+			throw new IOException(pPath + " is a checkpoint of another engine");
+		byte[] digest = new byte[32];
+		buffer.get(digest);
+		if (!Arrays.equals(digest, pFingerprint.getDigest()))
+			throw new IOException(pPath + " is a checkpoint of another problem");
+		return buffer;
+	}
+
+	/**
+	 * @return the bytes putSchedule() needs.
+	 */
+	static int scheduleSize(ProblemFingerprint pFingerprint) {
+		return 4 * pFingerprint.getCourseCount();
+	}
+
+	static void putSchedule(ByteBuffer pBuffer, ProblemFingerprint pFingerprint, ScheduleChoice[] pSchedule) {
+		int courses = pFingerprint.getCourseCount();
+		short[] room = new short[courses];
+		short[] cell = new short[courses];
+		pFingerprint.encode(pSchedule, room, cell);
+		for (int c = 0; c < courses; c++)
+			pBuffer.putShort(room[c]).putShort(cell[c]);
+	}
+
+	/**
+	 * @return a schedule written by putSchedule(), ordered like the problem's course list.
+	 */
+	static ScheduleChoice[] getSchedule(ByteBuffer pBuffer, ProblemFingerprint pFingerprint) {
+		int courses = pFingerprint.getCourseCount();
+		short[] room = new short[courses];
+		short[] cell = new short[courses];
+		for (int c = 0; c < courses; c++) {
+			room[c] = pBuffer.getShort();
+			cell[c] = pBuffer.getShort();
+		}
+		return pFingerprint.decode(room, cell);
+	}
+
+	/**
+	 * @return the serialized state of a Random, so a resumed run draws the same numbers the original would have.
+	 */
+	static byte[] serialize(Random r) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(r);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not serialize a Random", e);
+		}
+	}
+
+	/**
+	 * @return the Random saved with serialize() and put in the buffer as its length and its bytes.
+	 */
+	static Random getRandom(ByteBuffer pBuffer) {
+		byte[] bytes = new byte[pBuffer.getInt()];
+		pBuffer.get(bytes);
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return (Random) in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Corrupt checkpoint: bad random number generator state", e);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package scheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes checkpoints on a background thread, so the search thread never waits for the disk. There are two buffers: the search thread fills
+ * one while the writer thread writes the other. If the writer is still busy when the next checkpoint is due, that checkpoint is skipped
+ * instead of blocking the search.
+ *
+ * Every checkpoint goes to a temporary file that is then renamed over the old one, so a crash in the middle of a write leaves the previous
+ * checkpoint intact.
+ */
+public class CheckpointWriter {
+
+	private final Path path;
+	private final Path temporary;
+	private ByteBuffer filling = ByteBuffer.allocate(0); //the search thread's buffer
+	private ByteBuffer writing = ByteBuffer.allocate(0); //the writer thread's buffer
+	private boolean busy = false; //the writer thread owns the writing buffer
+	private boolean closed = false;
+	private final Thread writer;
+
+	private long written = 0; //Checkpoints written so far.
+	private long skipped = 0; //Checkpoints skipped because the previous one was still being written.
+
+	/**
+	 * @param pPath the checkpoint file
+	 */
+	public CheckpointWriter(String pPath) {
+		path = Paths.get(pPath);
+		temporary = Paths.get(pPath + ".tmp");
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "checkpoint writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Starts a checkpoint.
+	 *
+	 * @param pSize the bytes the checkpoint needs
+	 * @return an empty buffer to fill and pass to commit(), or null if the last checkpoint isn't on disk yet (skip this one)
+	 */
+	public synchronized ByteBuffer begin(int pSize) {
+		if (busy || closed) {
+			skipped++;
+			return null;
+		}
+		if (filling.capacity() < pSize)
+			filling = ByteBuffer.allocate(pSize);
+		filling.clear();
+		return filling;
+	}
+
+	/**
+	 * Hands the buffer from begin() to the writer thread and returns right away.
+	 */
+	public synchronized void commit() {
+		ByteBuffer swap = writing;
+		writing = filling;
+		filling = swap;
+		writing.flip();
+		busy = true;
+		notifyAll();
+	}
+
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	public synchronized long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Waits for the last checkpoint to be on disk and stops the writer thread.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+		while (busy) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			ByteBuffer buffer;
+			synchronized (this) {
+				while (!busy && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!busy)
+					return; //Closed and nothing left to write.
+				buffer = writing;
+			}
+			boolean saved = false;
+			try {
+				FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+				try {
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+					channel.force(true);
+				} finally {
+					channel.close();
+				}
+				try {
+					Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+				}
+				saved = true;
+			} catch (IOException e) {
+				Trace.warn("Could not write the checkpoint " + path + ": " + e);
+			}
+			synchronized (this) {
+				if (saved)
+					written++;
+				busy = false;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Copies a connected part of the conflict graph from the mother: starting from a random course, a breadth-first search over courses that share
+ * students collects about half of the courses, and those keep the mother's choice. The rest comes from the father. Courses with students in
+ * common are inherited together, so the child doesn't break up the arrangements that kept those students free of conflicts.
+ */
+public class ComponentCrossover implements CrossoverOperator {
+
+	private EvaluationContext context;
+
+	private int[] queue = new int[0];
+
+	private int[] mark = new int[0]; //mark[c] == stamp if course c was taken from the mother in the current crossover
+
+	private int stamp = 0;
+
+	public void prepare(EvaluationContext pContext) {
+		context = pContext;
+		queue = new int[pContext.getCourseCount()];
+		mark = new int[pContext.getCourseCount()];
+		stamp = 0;
+	}
+
+	public void crossover(ScheduleChoice[] pMother, ScheduleChoice[] pFather, ScheduleChoice[] pChild, Random r) {
+		int courses = pChild.length;
+		int wanted = courses / 2;
+		stamp++;
+
+		int taken = 0;
+		while (taken < wanted) {
+			/* Grow a component from a random course not taken yet (the graph may be disconnected): */
+			int seed = r.nextInt(courses);
+			while (mark[seed] == stamp)
+				seed = (seed + 1) % courses;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = seed;
+			mark[seed] = stamp;
+			taken++;
+			while (head < tail && taken < wanted) {
+				int c = queue[head++];
+				for (int u : context.neighbours[c]) {
+					if (mark[u] != stamp && taken < wanted) {
+						mark[u] = stamp;
+						queue[tail++] = u;
+						taken++;
+					}
+				}
+			}
+		}
+
+		for (int k = 0; k < courses; k++)
+			pChild[k] = (mark[k] == stamp) ? pMother[k] : pFather[k];
+	}
+}
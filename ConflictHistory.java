@@ -0,0 +1,167 @@
+package scheduler;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The exam conflicts every student had in past terms, keyed by Student.getStudentId(). MyEvaluator's comments wish for this: "if the student
+ * had exam conflict last term, the function would return a higher number", so the same students don't get upset every year.
+ *
+ * The file is a header followed by one int per student id, memory-mapped, so looking a student up is one array read and the history of a big
+ * university doesn't have to fit in the heap. The weights are read when an EvaluationContext is built (see Objective.studentWeight()), so a
+ * solve sees the history as it was when it started; record() adds the conflicts of an accepted schedule for the next terms.
+ *
+ * All the methods are synchronized, so one history can be shared by any number of schedulers.
+ */
+public class ConflictHistory {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int MAX_WEIGHT = 8; //A student's clashes never count more than 1 + MAX_WEIGHT times, however unlucky the student was.
+	final int GROWTH = 1024; //Ids the file grows by when a new student doesn't fit.
+
+	private static final int MAGIC = 0x45584d48; //"EXMH"
+	private static final short VERSION = 1;
+	private static final int HEADER = 8; //magic, version and a spare short, so the ints stay aligned
+
+	private final FileChannel channel;
+	private MappedByteBuffer mapped;
+	private IntBuffer conflicts; //conflicts.get(id): past conflicts of the student with that id
+	private long recorded = 0; //schedules recorded since the file was opened
+
+	/**
+	 * Opens a history, creating the file if it doesn't exist.
+	 *
+	 * @param pPath the file to keep the history in
+	 * @throws IOException if the file can't be mapped or isn't a conflict history
+	 */
+	public ConflictHistory(String pPath) throws IOException {
+		channel = FileChannel.open(Paths.get(pPath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long length = channel.size();
+		if (length == 0) {
+			map(0);
+			mapped.putInt(0, MAGIC);
+			mapped.putShort(4, VERSION);
+		} else {
+			if (length < HEADER || (length - HEADER) % 4 != 0) {
+				channel.close();
+				throw new IOException(pPath + " is not a conflict history");
+			}
+			map((int) ((length - HEADER) / 4));
+			if (mapped.getInt(0) != MAGIC || mapped.getShort(4) != VERSION) {
+				channel.close();
+				throw new IOException(pPath + " is not a conflict history");
+			}
+		}
+	}
+
+	/**
+	 * Maps the header and pIds ints, growing the file if it is shorter.
+	 */
+	private void map(int pIds) throws IOException {
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 4L * pIds);
+		mapped.order(ByteOrder.BIG_ENDIAN);
+		mapped.position(HEADER);
+		conflicts = mapped.slice().asIntBuffer();
+		mapped.position(0);
+	}
+
+	/**
+	 * @return the past conflicts of the student, capped at MAX_WEIGHT. 0 for students without an id or that the history has never seen.
+	 */
+	public synchronized int getWeight(Student pStudent) {
+		int id = pStudent.getStudentId();
+		if (id < 0 || id >= conflicts.capacity())
+			return 0;
+		return Math.min(conflicts.get(id), MAX_WEIGHT);
+	}
+
+	/**
+	 * Adds the conflicts of an accepted schedule to the history: a student with g exams in the same time cell had g - 1 conflicts there. The
+	 * ids of a problem are usually dense, so the whole update is one sequential pass over the ids it touches, followed by one force().
+	 *
+	 * @param pProblem the problem that was solved
+	 * @param pSolution a complete schedule of it
+	 */
+	public synchronized void record(SchedulingProblem pProblem, ScheduleChoice[] pSolution) {
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		int[] cell = new int[context.getCourseCount()];
+		boolean[] found = new boolean[cell.length];
+		for (ScheduleChoice choice : pSolution) {
+			int c = context.indexOf(choice.getCourse());
+			if (c < 0)
+				throw new IllegalArgumentException(choice.getCourse() + " is not a course of the problem");
+			cell[c] = choice.getDay() * context.slots + choice.getTimeSlot();
+			found[c] = true;
+		}
+		for (int c = 0; c < found.length; c++)
+			if (!found[c])
+				throw new IllegalArgumentException("Incomplete Exam Schedule! " + pProblem.getCourseList()[c] + " has no exam");
+
+		/* Count first, so the file is only walked once: */
+		Student[] student = pProblem.getStudentList();
+		int lowest = Integer.MAX_VALUE;
+		int highest = -1;
+		int[] added = new int[student.length];
+		for (int s = 0; s < student.length; s++) {
+			int[] courses = context.studentCourses[s];
+			for (int j = 0; j < courses.length; j++)
+				for (int k = 0; k < j; k++)
+					if (cell[courses[k]] == cell[courses[j]]) {
+						added[s]++; //Exam j clashes with an earlier one; counted once however many there are.
+						break;
+					}
+			int id = student[s].getStudentId();
+			if (added[s] > 0 && id >= 0) {
+				lowest = Math.min(lowest, id);
+				highest = Math.max(highest, id);
+			}
+		}
+		if (highest < 0)
+			return; //Nobody with an id had a conflict.
+
+		int[] delta = new int[highest - lowest + 1];
+		for (int s = 0; s < student.length; s++)
+			if (added[s] > 0 && student[s].getStudentId() >= 0)
+				delta[student[s].getStudentId() - lowest] += added[s];
+		try {
+			if (highest >= conflicts.capacity())
+				map((highest / GROWTH + 1) * GROWTH);
+			for (int i = 0; i < delta.length; i++) {
+				if (delta[i] == 0)
+					continue;
+				long total = (long) conflicts.get(lowest + i) + delta[i];
+				conflicts.put(lowest + i, (int) Math.min(total, Integer.MAX_VALUE));
+			}
+			mapped.force();
+			recorded++;
+		} catch (IOException e) {
+			Trace.warn("Could not record the conflicts of the schedule: " + e);
+		}
+	}
+
+	/**
+	 * @return the number of schedules recorded since the history was opened
+	 */
+	public synchronized long getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * @return how many student ids the file has room for
+	 */
+	public synchronized int size() {
+		return conflicts.capacity();
+	}
+
+	public synchronized void close() throws IOException {
+		mapped.force();
+		channel.close();
+	}
+}
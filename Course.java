@@ -53,6 +53,22 @@ public class Course {
 		students.add((Student) pS);
 	}
 
+	/**
+	 * Takes a student out of this course.
+	 * 
+	 * @param pS the student in question
+	 * @return true if the student was enrolled
+	 */
+	public boolean drop(Student pS) {
+		for (int i = 0; i < students.size(); i++) {
+			if (students.get(i) == pS) {
+				students.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Gets a list of all the students in the class.
 	 * 
@@ -0,0 +1,20 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Makes one child out of two parents in the Genetic Algorithm. Children keep every course at the same index as their parents, so a child is
+ * just a pick, for every course, of the mother's or the father's ScheduleChoice.
+ */
+public interface CrossoverOperator {
+
+	/**
+	 * Called once per run, before any crossover.
+	 */
+	public void prepare(EvaluationContext pContext);
+
+	/**
+	 * Fills pChild with ScheduleChoices taken from the parents. pChild must not be one of the parents.
+	 */
+	public void crossover(ScheduleChoice[] pMother, ScheduleChoice[] pFather, ScheduleChoice[] pChild, Random r);
+}
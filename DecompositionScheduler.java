@@ -0,0 +1,263 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This Scheduler splits a problem into the connected components of its course-conflict graph (courses are connected if they share a student),
+ * solves every component as its own SchedulingProblem in parallel, and merges the answers. Components never have student conflicts with each
+ * other, so the only thing they share is the rooms; a reservation step gives every course a room cell, moving as few courses as possible.
+ *
+ * When the graph is one big component, edges with few shared students are cut (up to MAX_CUT_WEIGHT) until it falls apart. Students taking
+ * courses on both sides of a cut are left out of the sub-problems, and a short tabu search over the whole problem fixes what they lose.
+ */
+public class DecompositionScheduler implements Scheduler {
+
+	/**
+	 * Makes a fresh Scheduler for every sub-problem (Schedulers keep state, so they can't be shared between threads).
+	 */
+	public interface SchedulerFactory {
+		public Scheduler newScheduler();
+	}
+
+	/**
+	 * @see scheduler.Scheduler#authors()
+	 */
+	public String authors() {
+		return "Rodrigo Alves (ID: 15674112)";
+	}
+
+	/*
+	 * Constants to play with:
+	 */
+	final int THREADS = Runtime.getRuntime().availableProcessors(); //Sub-problems solved at the same time.
+	final double MAX_COMPONENT_FRACTION = 0.5; //Cut weak edges while the biggest component has more than this fraction of the courses...
+	final int MAX_CUT_WEIGHT = 3; //...but never cut an edge with more shared students than this.
+	final int POLISH_SECONDS = 1; //Tabu search on the merged schedule, to fix the students that cross a cut.
+
+	private final SchedulerFactory factory;
+
+	int components = 0; //Components found in the last run.
+	int cutWeight = 0; //Edges with this many shared students or less were cut in the last run.
+
+	/**
+	 * Solves every component with a TabuSearchScheduler.
+	 */
+	public DecompositionScheduler() {
+		this(new SchedulerFactory() {
+			public Scheduler newScheduler() {
+				return new TabuSearchScheduler();
+			}
+		});
+	}
+
+	/**
+	 * @param pFactory makes the Scheduler for each component
+	 */
+	public DecompositionScheduler(SchedulerFactory pFactory) {
+		factory = pFactory;
+	}
+
+	/**
+	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
+	 */
+	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		int courses = context.getCourseCount();
+
+		/* Find the components, cutting weaker and weaker edges if there is a giant one: */
+		int[] component = null;
+		for (cutWeight = 0; cutWeight <= MAX_CUT_WEIGHT; cutWeight++) {
+			component = findComponents(context, cutWeight);
+			if (largest(component) <= MAX_COMPONENT_FRACTION * courses)
+				break;
+		}
+		if (cutWeight > MAX_CUT_WEIGHT)
+			cutWeight = MAX_CUT_WEIGHT;
+		components = count(component);
+		if (components == 1)
+			return factory.newScheduler().schedule(pProblem);
+
+		/* Solve the components in parallel, the biggest first: */
+		final SchedulingProblem[] subProblem = buildSubProblems(pProblem, context, component, components);
+		Integer[] order = new Integer[components];
+		for (int i = 0; i < components; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return subProblem[b].getCourseList().length - subProblem[a].getCourseList().length;
+			}
+		});
+
+		ScheduleChoice[][] subSolution = new ScheduleChoice[components][];
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(THREADS, components));
+		try {
+			ArrayList<Future<ScheduleChoice[]>> running = new ArrayList<Future<ScheduleChoice[]>>();
+			for (final int i : order) {
+				running.add(pool.submit(new Callable<ScheduleChoice[]>() {
+					public ScheduleChoice[] call() {
+						return factory.newScheduler().schedule(subProblem[i]);
+					}
+				}));
+			}
+			for (int k = 0; k < components; k++)
+				subSolution[order[k]] = running.get(k).get();
+		} catch (Exception e) {
+			throw new IllegalStateException("A sub-problem failed", e);
+		} finally {
+			pool.shutdown();
+		}
+
+		IncrementalSchedule merged = reserve(context, order, subSolution);
+
+		/* The cut edges were invisible to the sub-problems. Let a short tabu search deal with them: */
+		if (cutWeight > 0 && merged.score() > 0)
+			return new TabuSearchScheduler().search(merged, System.currentTimeMillis() + POLISH_SECONDS * 1000L);
+		return merged.toChoices();
+	}
+
+	/**
+	 * Union-find over the conflict graph, ignoring edges with pCutWeight shared students or less.
+	 *
+	 * @return the component of each course, numbered from 0
+	 */
+	private int[] findComponents(EvaluationContext context, int pCutWeight) {
+		int courses = context.getCourseCount();
+		int[] parent = new int[courses];
+		for (int c = 0; c < courses; c++)
+			parent[c] = c;
+		for (int c = 0; c < courses; c++)
+			for (int k = 0; k < context.neighbours[c].length; k++)
+				if (context.sharedStudents[c][k] > pCutWeight)
+					parent[find(parent, c)] = find(parent, context.neighbours[c][k]);
+
+		int[] component = new int[courses];
+		int[] number = new int[courses];
+		Arrays.fill(number, -1);
+		int total = 0;
+		for (int c = 0; c < courses; c++) {
+			int root = find(parent, c);
+			if (number[root] < 0)
+				number[root] = total++;
+			component[c] = number[root];
+		}
+		return component;
+	}
+
+	private int find(int[] parent, int c) {
+		while (parent[c] != c) {
+			parent[c] = parent[parent[c]];
+			c = parent[c];
+		}
+		return c;
+	}
+
+	private int count(int[] component) {
+		int total = 0;
+		for (int c : component)
+			total = Math.max(total, c + 1);
+		return total;
+	}
+
+	private int largest(int[] component) {
+		int[] size = new int[count(component)];
+		int largest = 0;
+		for (int c : component)
+			largest = Math.max(largest, ++size[c]);
+		return largest;
+	}
+
+	/**
+	 * One SchedulingProblem per component, with the same Course, Room and Student objects. Students with courses in more than one component
+	 * (only possible after cutting edges) are left out.
+	 */
+	private SchedulingProblem[] buildSubProblems(SchedulingProblem pProblem, EvaluationContext context, int[] component, int total) {
+		Course[] course = pProblem.getCourseList();
+		Student[] student = pProblem.getStudentList();
+		ArrayList<ArrayList<Course>> courses = new ArrayList<ArrayList<Course>>();
+		ArrayList<ArrayList<Student>> students = new ArrayList<ArrayList<Student>>();
+		for (int i = 0; i < total; i++) {
+			courses.add(new ArrayList<Course>());
+			students.add(new ArrayList<Student>());
+		}
+		for (int c = 0; c < course.length; c++)
+			courses.get(component[c]).add(course[c]);
+		for (int s = 0; s < student.length; s++) {
+			int first = component[context.studentCourses[s][0]];
+			boolean inside = true;
+			for (int c : context.studentCourses[s])
+				inside &= component[c] == first;
+			if (inside)
+				students.get(first).add(student[s]);
+		}
+
+		SchedulingProblem[] subProblem = new SchedulingProblem[total];
+		for (int i = 0; i < total; i++)
+			subProblem[i] = new SchedulingProblem(courses.get(i).toArray(new Course[0]), pProblem.getRoomList(),
+					students.get(i).toArray(new Student[0]), pProblem.getTimeGrid());
+		return subProblem;
+	}
+
+	/**
+	 * The reservation step. Components claim room cells in the given order (the biggest first). A course whose room cell is already taken
+	 * first tries the other rooms at the same time, which costs nothing because student conflicts only depend on the time. The courses left
+	 * over go to the free room cell that adds the fewest violations to the merged schedule.
+	 */
+	private IncrementalSchedule reserve(EvaluationContext context, Integer[] order, ScheduleChoice[][] subSolution) {
+		int rooms = context.getRoomCount();
+		boolean[] taken = new boolean[context.roomCells];
+		IncrementalSchedule merged = new IncrementalSchedule(context);
+		int[] leftOver = new int[context.getCourseCount()];
+		int totalLeftOver = 0;
+
+		int[] room = new int[context.getCourseCount()];
+		int[] cell = new int[context.getCourseCount()];
+		for (int i : order) {
+			for (ScheduleChoice choice : subSolution[i]) {
+				int c = context.indexOf(choice.getCourse());
+				int time = choice.getDay() * context.slots + choice.getTimeSlot();
+				room[c] = context.indexOf(choice.getRoom());
+				cell[c] = time;
+				if (taken[room[c] * context.timeCells + time]) {
+					room[c] = -1;
+					for (int rm = 0; rm < rooms && room[c] < 0; rm++)
+						if (!taken[rm * context.timeCells + time])
+							room[c] = rm;
+				}
+				if (room[c] < 0) {
+					room[c] = context.indexOf(choice.getRoom()); //Parked where it was until the end.
+					leftOver[totalLeftOver++] = c;
+				} else {
+					taken[room[c] * context.timeCells + time] = true;
+				}
+			}
+		}
+		for (int c = 0; c < room.length; c++)
+			merged.move(c, room[c], cell[c]);
+
+		for (int i = 0; i < totalLeftOver; i++) {
+			int c = leftOver[i];
+			int bestRoomCell = -1;
+			int bestScore = Integer.MAX_VALUE;
+			for (int rc = 0; rc < context.roomCells; rc++) {
+				if ((taken[rc] && !merged.fits(c, rc / context.timeCells, rc % context.timeCells)) || context.blocked[rc % context.timeCells])
+					continue; //Taken, unless it is a room with enough seats left.
+				int score = merged.scoreAfterMove(c, rc / context.timeCells, rc % context.timeCells);
+				if (score < bestScore) {
+					bestScore = score;
+					bestRoomCell = rc;
+				}
+			}
+			if (bestRoomCell < 0)
+				continue; //More exams than room cells; this one has to clash.
+			taken[bestRoomCell] = true;
+			merged.move(c, bestRoomCell / context.timeCells, bestRoomCell % context.timeCells);
+		}
+		return merged;
+	}
+}
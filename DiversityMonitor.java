@@ -0,0 +1,135 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Keeps an eye on how alike the individuals of a population are. Every individual is packed into one int per course (its room cell, room *
+ * timeCells + time cell), so comparing two schedules is a scan over an int array instead of four getters per course, and gets a 64-bit hash
+ * so clones are found without comparing every pair.
+ *
+ * The diversity is the mean Hamming distance (the fraction of courses in a different room cell) over a sample of pairs and courses, which
+ * is cheap enough to measure every generation.
+ */
+public class DiversityMonitor {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int SAMPLE_PAIRS = 32; //Pairs compared by diversity() (all of them if the population has fewer).
+	final int SAMPLE_COURSES = 128; //Courses compared per pair by diversity() (all of them if the problem has fewer).
+
+	private final EvaluationContext context;
+	private final int[][] genome; //genome[i][c]: room cell of course c in individual i
+	private final long[] hash;
+	private final long[] salt; //salt[c]: random bits mixed into the hash for course c
+
+	/**
+	 * @param pContext the problem
+	 * @param pPopulation the number of individuals to keep track of
+	 */
+	public DiversityMonitor(EvaluationContext pContext, int pPopulation) {
+		context = pContext;
+		genome = new int[pPopulation][pContext.getCourseCount()];
+		hash = new long[pPopulation];
+		salt = new long[pContext.getCourseCount()];
+		Random r = new Random(pContext.getCourseCount());
+		for (int c = 0; c < salt.length; c++)
+			salt[c] = r.nextLong();
+	}
+
+	/**
+	 * Packs individual i, a schedule ordered like the problem's course list, and hashes it.
+	 */
+	public void pack(int i, ScheduleChoice[] pSchedule) {
+		int[] packed = genome[i];
+		long h = 0;
+		for (int c = 0; c < packed.length; c++) {
+			ScheduleChoice choice = pSchedule[c];
+			packed[c] = context.indexOf(choice.getRoom()) * context.timeCells + choice.getDay() * context.slots + choice.getTimeSlot();
+			h += mix(salt[c] ^ packed[c]);
+		}
+		hash[i] = h;
+	}
+
+	/**
+	 * A 64-bit finaliser (from MurmurHash3), so schedules that differ in one course get unrelated hashes.
+	 */
+	private static long mix(long x) {
+		x ^= x >>> 33;
+		x *= 0xff51afd7ed558ccdL;
+		x ^= x >>> 33;
+		x *= 0xc4ceb9fe1a85ec53L;
+		x ^= x >>> 33;
+		return x;
+	}
+
+	/**
+	 * @return true if individuals i and j are the same schedule. The hashes settle almost every pair; only equal hashes are compared.
+	 */
+	public boolean isClone(int i, int j) {
+		return hash[i] == hash[j] && Arrays.equals(genome[i], genome[j]);
+	}
+
+	/**
+	 * @return the index of an earlier individual (below i) that is a clone of individual i, or -1 if there is none.
+	 */
+	public int findClone(int i) {
+		for (int j = 0; j < i; j++)
+			if (isClone(i, j))
+				return j;
+		return -1;
+	}
+
+	/**
+	 * @return the number of courses in a different room cell in individuals i and j.
+	 */
+	public int distance(int i, int j) {
+		int[] a = genome[i];
+		int[] b = genome[j];
+		int different = 0;
+		for (int c = 0; c < a.length; c++)
+			if (a[c] != b[c])
+				different++;
+		return different;
+	}
+
+	/**
+	 * @return the sampled mean distance between the first pCount individuals, as a fraction of the courses (0: all clones, 1: nothing in
+	 *         common).
+	 */
+	public double diversity(int pCount, Random r) {
+		int courses = context.getCourseCount();
+		if (pCount < 2 || courses == 0)
+			return 0;
+		int pairs = pCount * (pCount - 1) / 2;
+		boolean allPairs = pairs <= SAMPLE_PAIRS;
+		boolean allCourses = courses <= SAMPLE_COURSES;
+		int samples = allPairs ? pairs : SAMPLE_PAIRS;
+		int genes = allCourses ? courses : SAMPLE_COURSES;
+		long different = 0;
+		int i = 0;
+		int j = 1;
+		for (int p = 0; p < samples; p++) {
+			if (allPairs) {
+				if (p > 0 && ++j == pCount) {
+					i++;
+					j = i + 1;
+				}
+			} else {
+				i = r.nextInt(pCount);
+				j = r.nextInt(pCount - 1);
+				if (j >= i)
+					j++;
+			}
+			int[] a = genome[i];
+			int[] b = genome[j];
+			for (int g = 0; g < genes; g++) {
+				int c = allCourses ? g : r.nextInt(courses);
+				if (a[c] != b[c])
+					different++;
+			}
+		}
+		return (double) different / ((double) samples * genes);
+	}
+}
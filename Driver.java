@@ -15,7 +15,8 @@ public class Driver {
 	 * Java doesn't really have a good way of timing other than the system timer, so other CPU load will be a factor. Don't encode a DVD while you're
 	 * running this.
 	 * 
-	 * @param args
+	 * @param args optionally, a directory to export the genetic algorithm's schedules and the students' timetables to. Nothing is
+	 *            exported without it.
 	 */
 	public static void main(String[] args) {
 		/* Let's batch solve 9 problems */
@@ -34,7 +35,7 @@ public class Driver {
 		for (int i = 0; i < totalEasyProblems; i++) {
 			arrayOfProblems[i] = easyProblems.generateProblem(i);
 			System.out.println("+++++++++++ Problem " + i + " +++++++++++ ");
-			System.out.println(arrayOfProblems[i]);
+			System.out.println(summary(arrayOfProblems[i]));
 		}
 
 		System.out.println("\n\n=======================================");
@@ -46,17 +47,29 @@ public class Driver {
 		for (int i = totalEasyProblems; i < (totalEasyProblems + totalMediumProblems); i++) {
 			arrayOfProblems[i] = mediumProblems.generateProblem(i);
 			System.out.println("+++++++++++ Problem " + i + " +++++++++++ ");
-			System.out.println(arrayOfProblems[i]);
+			System.out.println(summary(arrayOfProblems[i]));
 		}
 
 		System.out.println("\n\n\n---STARTING BATCH SOLVE---");
 		Evaluator e = new Evaluator();
 		int count1 = 0;
 		int count2 = 0;
+		int count3 = 0;
+		int count4 = 0;
 		long countSeconds1 = 0;
 		long countSeconds2 = 0;
+		long countSeconds3 = 0;
+		long countSeconds4 = 0;
+
+		/* The same seeded problems come back on every run, so keep their best schedules between runs: */
+		SolutionStore store = null;
+		try {
+			store = new SolutionStore("solutions.store");
+		} catch (java.io.IOException ex) {
+			System.err.println("Running without a solution store: " + ex);
+		}
 		for (int i = 0; i < (totalEasyProblems + totalMediumProblems); i++) {
-			Scheduler myScheduler1 = new Scheduler1();
+			Scheduler1 myScheduler1 = new Scheduler1();
 			long time = System.currentTimeMillis();
 			ScheduleChoice[] sc = myScheduler1.schedule(arrayOfProblems[i]);
 			long delta = (System.currentTimeMillis() - time) / 1000;
@@ -71,9 +84,9 @@ public class Driver {
 					+ ((long)count1/(long)(i+1)) + " TA:" 
 					+ ((long)countSeconds1/(long)(i+1)) );
 
-			System.out.println("Problem " + i + ". " 
-					+ "Solution from the Genetic Algorithm: ");
-			printSchedule(sc);
+			if (args.length > 0)
+				exportSchedule(arrayOfProblems[i], sc, java.nio.file.Paths.get(args[0]), "problem-" + i + "-genetic-algorithm");
+			System.out.print(myScheduler1.operatorReport());
 
 			Scheduler myScheduler2 = new Scheduler2();
 			time = System.currentTimeMillis();
@@ -89,6 +102,90 @@ public class Driver {
 					+ count2 + "|" + countSeconds2 + "s in total. CA:" 
 					+ ((long)count2/(long)(i+1))+ " TA:" 
 					+ ((long)countSeconds2/(long)(i+1)) );
+
+			ParallelTemperingScheduler myScheduler3 = new ParallelTemperingScheduler();
+			time = System.currentTimeMillis();
+			sc = myScheduler3.schedule(arrayOfProblems[i]);
+			delta = (System.currentTimeMillis() - time) / 1000;
+			violations = e.violatedConstraints(arrayOfProblems[i], sc);
+			if (violations < 10000) count3 += violations;
+			countSeconds3 += delta;
+			
+			System.out.println("\n=======================================");
+			System.out.println(i + ", Parallel Tempering: took " 
+					+ delta + " seconds [Violations: " + violations + "] T: " 
+					+ count3 + "|" + countSeconds3 + "s in total. CA:" 
+					+ (count3 / (i+1)) + " TA:" 
+					+ (countSeconds3 / (i+1)) );
+			System.out.print(myScheduler3.acceptanceReport());
+
+			Scheduler myScheduler4 = new TabuSearchScheduler();
+			time = System.currentTimeMillis();
+			sc = myScheduler4.schedule(arrayOfProblems[i]);
+			delta = (System.currentTimeMillis() - time) / 1000;
+			violations = e.violatedConstraints(arrayOfProblems[i], sc);
+			if (violations < 10000) count4 += violations;
+			countSeconds4 += delta;
+			
+			System.out.println("\n=======================================");
+			System.out.println(i + ", Tabu Search: took " 
+					+ delta + " seconds [Violations: " + violations + "] T: " 
+					+ count4 + "|" + countSeconds4 + "s in total. CA:" 
+					+ (count4 / (i+1)) + " TA:" 
+					+ (countSeconds4 / (i+1)) );
+
+			/* The exact solver gives the baseline the other algorithms are compared with: */
+			BranchAndBoundScheduler exact = new BranchAndBoundScheduler();
+			time = System.currentTimeMillis();
+			sc = exact.schedule(arrayOfProblems[i]);
+			delta = (System.currentTimeMillis() - time) / 1000;
+			violations = e.violatedConstraints(arrayOfProblems[i], sc);
+			
+			System.out.println("\n=======================================");
+			System.out.println(i + ", Branch and Bound: took " 
+					+ delta + " seconds [Violations: " + violations + "] " 
+					+ (exact.provenOptimal ? "proven optimal" : "not proven optimal (timed out)") );
+
+			/* That is the timetable the students get, so its conflicts count against them in the next terms: */
+			ConflictHistory history = Objective.getDefault().getHistory();
+			if (history != null)
+				history.record(arrayOfProblems[i], sc);
+
+			if (store != null) {
+				CachingScheduler cached = new CachingScheduler(new TabuSearchScheduler(), store);
+				time = System.currentTimeMillis();
+				sc = cached.schedule(arrayOfProblems[i]);
+				delta = (System.currentTimeMillis() - time) / 1000;
+				violations = e.violatedConstraints(arrayOfProblems[i], sc);
+				
+				System.out.println("\n=======================================");
+				System.out.println(i + ", Cached Tabu Search: took " 
+						+ delta + " seconds [Violations: " + violations + "] " 
+						+ (cached.lastWasHit ? "started from the stored schedule" : "not in the store yet") );
+			}
+		}
+	}
+
+	/**
+	 * @return the size of a problem, in one line. Printing a whole problem (SchedulingProblem.toString()) takes longer than solving it.
+	 */
+	public static String summary(SchedulingProblem pProblem) {
+		return pProblem.getCourseList().length + " courses, " + pProblem.getRoomList().length + " rooms, " + pProblem.getStudentList().length
+				+ " students";
+	}
+
+	/**
+	 * Writes a schedule to pName.csv in pDirectory and the students' timetables to pName-students-N.csv next to it, instead of printing them.
+	 */
+	public static void exportSchedule(SchedulingProblem pProblem, ScheduleChoice[] pSchedule, java.nio.file.Path pDirectory, String pName) {
+		ScheduleExporter exporter = new ScheduleExporter(java.time.LocalDate.now());
+		try {
+			java.nio.file.Files.createDirectories(pDirectory);
+			exporter.writeSchedule(pDirectory.resolve(pName + ".csv"), ScheduleExporter.CSV, pProblem, pSchedule);
+			exporter.writeTimetables(pDirectory, pName + "-students-", 4, ScheduleExporter.CSV, pProblem, pSchedule);
+			System.out.println("Schedule written to " + pDirectory.resolve(pName + ".csv") + ", timetables to " + pName + "-students-*.csv");
+		} catch (java.io.IOException e) {
+			System.err.println("Could not export the schedule: " + e);
 		}
 	}
 
@@ -0,0 +1,170 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * A batch of enrolment changes to a SchedulingProblem, as they come in during the add/drop period: students added or dropped, students moving
+ * from one course to another, and courses added or removed. Record the changes, then call {@link #applyTo(EvaluationContext)} to get the
+ * context of the changed problem. Courses, rooms and unchanged students stay the same objects, so an old schedule still matches by identity.
+ */
+public class EnrolmentDelta {
+
+	private final ArrayList<Student> added = new ArrayList<Student>();
+	private final IdentityHashMap<Student, Boolean> dropped = new IdentityHashMap<Student, Boolean>();
+	private final IdentityHashMap<Student, Course[]> moved = new IdentityHashMap<Student, Course[]>(); //the new schedule of each moved student
+	private final ArrayList<Course> addedCourses = new ArrayList<Course>();
+	private final IdentityHashMap<Course, Boolean> removedCourses = new IdentityHashMap<Course, Boolean>();
+
+	/**
+	 * @param pS a new student. Its courses must be in the changed problem.
+	 */
+	public void addStudent(Student pS) {
+		added.add(pS);
+	}
+
+	/**
+	 * @param pS a student of the problem that leaves all of its courses
+	 */
+	public void dropStudent(Student pS) {
+		dropped.put(pS, Boolean.TRUE);
+		moved.remove(pS);
+	}
+
+	/**
+	 * Swaps one course of a student for another. Several moves of the same student add up.
+	 *
+	 * @param pS a student of the problem
+	 * @param pFrom a course the student takes now
+	 * @param pTo the course it takes instead
+	 */
+	public void moveStudent(Student pS, Course pFrom, Course pTo) {
+		Course[] schedule = moved.containsKey(pS) ? moved.get(pS) : pS.getCourses();
+		for (int i = 0; i < schedule.length; i++) {
+			if (schedule[i] == pFrom) {
+				schedule[i] = pTo;
+				moved.put(pS, schedule);
+				return;
+			}
+		}
+		throw new IllegalArgumentException(pS.getStudentName() + " doesn't take " + pFrom);
+	}
+
+	/**
+	 * @param pC a course to add to the problem. Its students are added with addStudent() or moveStudent().
+	 */
+	public void addCourse(Course pC) {
+		addedCourses.add(pC);
+	}
+
+	/**
+	 * @param pC a course to take out of the problem. Every student taking it must be dropped or moved out of it too.
+	 */
+	public void removeCourse(Course pC) {
+		removedCourses.put(pC, Boolean.TRUE);
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && dropped.isEmpty() && moved.isEmpty() && addedCourses.isEmpty() && removedCourses.isEmpty();
+	}
+
+	/**
+	 * Builds the changed problem and its EvaluationContext. Only the conflict graph rows of the courses the changes touch are rebuilt; the
+	 * rest comes from pContext. The enrolment lists of the courses are updated too, and the new context becomes the shared one of
+	 * the new problem (see EvaluationContext.forProblem()).
+	 *
+	 * @param pContext the context of the problem before the changes
+	 * @return the context of the changed problem (its getProblem() is the new SchedulingProblem)
+	 */
+	public EvaluationContext applyTo(EvaluationContext pContext) {
+		SchedulingProblem before = pContext.getProblem();
+
+		ArrayList<Course> courses = new ArrayList<Course>();
+		IdentityHashMap<Course, Boolean> courseSet = new IdentityHashMap<Course, Boolean>();
+		for (Course c : before.getCourseList()) {
+			if (!removedCourses.containsKey(c)) {
+				courses.add(c);
+				courseSet.put(c, Boolean.TRUE);
+			}
+		}
+		for (Course c : addedCourses) {
+			if (!courseSet.containsKey(c)) {
+				courses.add(c);
+				courseSet.put(c, Boolean.TRUE);
+			}
+		}
+
+		/* Check everything before changing any enrolment list, so a bad delta leaves the problem as it was: */
+		IdentityHashMap<Course, Boolean> touched = new IdentityHashMap<Course, Boolean>();
+		for (Course c : addedCourses)
+			touched.put(c, Boolean.TRUE);
+		ArrayList<Student> students = new ArrayList<Student>();
+		ArrayList<Student> replacement = new ArrayList<Student>(); //the students that replace the moved ones, in the same order
+		for (Student s : before.getStudentList()) {
+			if (dropped.containsKey(s)) {
+				touch(touched, s.getCourses());
+			} else if (moved.containsKey(s)) {
+				Student changed = new Student(s.getStudentId(), s.getStudentName(), moved.get(s).clone());
+				check(changed, courseSet);
+				touch(touched, s.getCourses());
+				touch(touched, changed.getCourses());
+				students.add(changed);
+				replacement.add(changed);
+			} else {
+				students.add(s);
+			}
+		}
+		for (Student s : added) {
+			check(s, courseSet);
+			touch(touched, s.getCourses());
+			students.add(s);
+		}
+		for (Student s : students)
+			for (Course c : s.getCourses())
+				if (removedCourses.containsKey(c))
+					throw new IllegalArgumentException(s.getStudentName() + " still takes " + c + ", which is being removed");
+
+		/* Keep the enrolment lists of the courses in line with the students: */
+		for (Student s : dropped.keySet())
+			for (Course c : s.getCourses())
+				c.drop(s);
+		int next = 0;
+		for (Student s : before.getStudentList()) {
+			if (!moved.containsKey(s) || dropped.containsKey(s))
+				continue;
+			Student changed = replacement.get(next++);
+			for (Course c : s.getCourses())
+				c.drop(s);
+			for (Course c : changed.getCourses())
+				c.enroll(changed);
+		}
+		for (Student s : added)
+			for (Course c : s.getCourses())
+				c.enroll(s);
+
+		SchedulingProblem after = new SchedulingProblem(courses.toArray(new Course[0]), before.getRoomList(), students.toArray(new Student[0]),
+				before.getTimeGrid());
+		return EvaluationContext.share(new EvaluationContext(after, pContext, touched));
+	}
+
+	private void touch(IdentityHashMap<Course, Boolean> pTouched, Course[] pCourses) {
+		for (Course c : pCourses)
+			pTouched.put(c, Boolean.TRUE);
+	}
+
+	/**
+	 * Makes sure a changed or new student takes Student.scheduleSize different courses, all of them in the changed problem.
+	 */
+	private void check(Student pS, IdentityHashMap<Course, Boolean> pCourses) {
+		Course[] schedule = pS.getCourses();
+		if (schedule.length != Student.scheduleSize)
+			throw new IllegalArgumentException(pS.getStudentName() + " takes " + schedule.length + " courses, not " + Student.scheduleSize);
+		for (int i = 0; i < schedule.length; i++) {
+			if (!pCourses.containsKey(schedule[i]))
+				throw new IllegalArgumentException(pS.getStudentName() + " takes " + schedule[i] + ", which is not in the course list");
+			for (int j = 0; j < i; j++)
+				if (schedule[i] == schedule[j])
+					throw new IllegalArgumentException(pS.getStudentName() + " takes " + schedule[i] + " twice");
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package scheduler;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Read-only tables about a SchedulingProblem that every fast evaluation needs: how many students take each course, which courses each student
+ * takes, which students are in each course and which courses share students (the conflict graph). Courses and rooms are identified by their
+ * index in the problem's course and room lists, and a time cell is day * slotsPerDay + slot.
+ *
+ * Nothing in here changes after construction, so one context can be shared by any number of threads. Use {@link #forProblem(SchedulingProblem)}
+ * to get the shared context of a problem instead of building a new one in every engine and evaluator.
+ */
+public class EvaluationContext {
+
+	/**
+	 * PENALTY[g] is what MyEvaluator charges a student that has g exams in the same time cell (times the student's studentWeight). It is 0
+	 * for g <= 1 and grows faster than the number of clashing pairs, because "it's better to have 5 students with 1 conflict than 1 student
+	 * with 5 conflicts".
+	 */
+	static final int[] PENALTY = new int[Student.scheduleSize + 1];
+
+	static {
+		for (int g = 2; g < PENALTY.length; g++)
+			PENALTY[g] = PENALTY[g - 1] + (g - 1) * g / 2 + (g - 1);
+	}
+
+	private final SchedulingProblem problem;
+
+	final int days; //days in the exam period
+	final int slots; //time slots per day
+	final int timeCells; //days * slots
+	final int roomCells; //rooms * timeCells
+	final boolean[] blocked; //blocked[t]: the time grid has no exams in time cell t
+	final int[] openCells; //the time cells that are not blocked, in order
+	final int blockedPenalty; //what each exam in a blocked cell adds to the room penalty
+	final int[] capacity; //seats of each room, 0 for a room that takes a single exam at a time
+	final boolean hasCapacities; //true if any room has seats, so exams may share a room cell
+
+	final int[] courseSize; //the total number of students in each course
+	final int[][] courseStudents; //the student indexes of each course
+	final int[][] studentCourses; //the course indexes of each student
+	final int[][] neighbours; //the courses that share at least one student with each course
+	final int[][] sharedStudents; //sharedStudents[c][k] is the number of students taking both c and neighbours[c][k]
+	final int[] studentWeight; //what each student's clashes are multiplied by, 1 unless the objective has a ConflictHistory
+	final int[][] conflictWeight; //conflictWeight[c][k] is the sum of studentWeight over those shared students (sharedStudents if all are 1)
+	final Objective objective; //the soft constraints, Objective.getDefault() when the context was built
+
+	private final IdentityHashMap<Course, Integer> courseIndex;
+	private final IdentityHashMap<Room, Integer> roomIndex;
+
+	/**
+	 * @return the shared context of the problem, built the first time it is asked for, and built again if Objective.setDefault() changed the
+	 *         objective since (a search that already has the old context keeps it). Thread-safe, and lock-free once the context is built: it
+	 *         is kept in the problem itself, so it lives exactly as long as the problem does.
+	 */
+	public static EvaluationContext forProblem(SchedulingProblem pProblem) {
+		EvaluationContext context = pProblem.context;
+		Objective objective = Objective.getDefault();
+		if (context != null && context.objective == objective)
+			return context;
+		synchronized (pProblem) {
+			if (pProblem.context == null || pProblem.context.objective != objective)
+				pProblem.context = new EvaluationContext(pProblem);
+			return pProblem.context;
+		}
+	}
+
+	/**
+	 * Makes a context that was built some other way (see EnrolmentDelta) the shared one of its problem.
+	 *
+	 * @return pContext
+	 */
+	static EvaluationContext share(EvaluationContext pContext) {
+		pContext.problem.context = pContext;
+		return pContext;
+	}
+
+	/**
+	 * Builds all the tables for a problem. This is O(students * Student.scheduleSize^2), so build it once per problem and share it (see
+	 * forProblem()).
+	 *
+	 * @param pProblem the problem to index
+	 */
+	public EvaluationContext(SchedulingProblem pProblem) {
+		this(pProblem, null, null);
+	}
+
+	/**
+	 * Builds the tables for a problem that differs from an earlier one by a few enrolment changes (see EnrolmentDelta). The conflict graph rows
+	 * of the courses nobody joined or left are copied from the earlier context, so only the touched courses pay for a rebuild.
+	 *
+	 * @param pProblem the changed problem
+	 * @param pPrevious the context of the problem before the changes
+	 * @param pTouched every course whose students changed, including the added ones
+	 */
+	EvaluationContext(SchedulingProblem pProblem, EvaluationContext pPrevious, IdentityHashMap<Course, Boolean> pTouched) {
+		problem = pProblem;
+		objective = Objective.getDefault();
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		Student[] student = pProblem.getStudentList();
+
+		TimeGrid grid = pProblem.getTimeGrid();
+		days = grid.getDays();
+		slots = grid.getSlots();
+		timeCells = grid.getCellCount();
+		roomCells = room.length * timeCells;
+		blocked = new boolean[timeCells];
+		openCells = new int[grid.getOpenCellCount()];
+		for (int t = 0; t < timeCells; t++)
+			blocked[t] = grid.isBlocked(t);
+		for (int k = 0; k < openCells.length; k++)
+			openCells[k] = grid.getOpenCell(k);
+		/* One exam in a blocked cell is already worse than every student in one room clash, so the score jumps to the x100 range: */
+		blockedPenalty = student.length + 2;
+
+		courseIndex = new IdentityHashMap<Course, Integer>();
+		for (int i = 0; i < course.length; i++)
+			courseIndex.put(course[i], i);
+		roomIndex = new IdentityHashMap<Room, Integer>();
+		capacity = new int[room.length];
+		boolean seated = false;
+		for (int i = 0; i < room.length; i++) {
+			roomIndex.put(room[i], i);
+			capacity[i] = room[i].getCapacity();
+			seated |= capacity[i] > 0;
+		}
+		hasCapacities = seated;
+
+		/* Student -> course indexes, and the course sizes and weights on the way: */
+		courseSize = new int[course.length];
+		studentCourses = new int[student.length][Student.scheduleSize];
+		studentWeight = new int[student.length];
+		boolean weighted = false;
+		for (int s = 0; s < student.length; s++) {
+			studentWeight[s] = objective.studentWeight(student[s]);
+			weighted |= studentWeight[s] != 1;
+			for (int j = 0; j < Student.scheduleSize; j++) {
+				Integer c = courseIndex.get(student[s].getCourse(j));
+				if (c == null)
+					throw new IllegalArgumentException(student[s].getStudentName() + " takes " + student[s].getCourse(j)
+							+ ", which is not in the course list");
+				studentCourses[s][j] = c;
+				courseSize[c]++;
+			}
+		}
+
+		/* Course -> student indexes: */
+		courseStudents = new int[course.length][];
+		int[] filled = new int[course.length];
+		for (int c = 0; c < course.length; c++)
+			courseStudents[c] = new int[courseSize[c]];
+		for (int s = 0; s < student.length; s++)
+			for (int j = 0; j < Student.scheduleSize; j++) {
+				int c = studentCourses[s][j];
+				courseStudents[c][filled[c]++] = s;
+			}
+
+		/* Where every course of the earlier problem went (-1 if it was removed): */
+		int[] renumber = null;
+		if (pPrevious != null) {
+			Course[] previousCourse = pPrevious.problem.getCourseList();
+			renumber = new int[previousCourse.length];
+			for (int i = 0; i < previousCourse.length; i++)
+				renumber[i] = indexOf(previousCourse[i]);
+		}
+
+		/* The conflict graph, one course at a time so we never need a courses x courses matrix: */
+		neighbours = new int[course.length][];
+		sharedStudents = new int[course.length][];
+		int[] count = new int[course.length];
+		int[] touched = new int[course.length];
+		for (int c = 0; c < course.length; c++) {
+			int before = pPrevious == null ? -1 : pPrevious.indexOf(course[c]);
+			if (before >= 0 && !pTouched.containsKey(course[c])) {
+				/* Same students as before, so the same neighbours; only their indexes may have shifted: */
+				neighbours[c] = new int[pPrevious.neighbours[before].length];
+				for (int k = 0; k < neighbours[c].length; k++)
+					neighbours[c][k] = renumber[pPrevious.neighbours[before][k]];
+				sharedStudents[c] = pPrevious.sharedStudents[before];
+				continue;
+			}
+			int totalTouched = 0;
+			for (int s : courseStudents[c]) {
+				for (int other : studentCourses[s]) {
+					if (other == c)
+						continue;
+					if (count[other] == 0)
+						touched[totalTouched++] = other;
+					count[other]++;
+				}
+			}
+			neighbours[c] = new int[totalTouched];
+			sharedStudents[c] = new int[totalTouched];
+			for (int k = 0; k < totalTouched; k++) {
+				neighbours[c][k] = touched[k];
+				sharedStudents[c][k] = count[touched[k]];
+				count[touched[k]] = 0;
+			}
+		}
+
+		/* The same graph weighted by the students' past conflicts, so the bounds see what the evaluation charges: */
+		if (!weighted) {
+			conflictWeight = sharedStudents;
+		} else {
+			conflictWeight = new int[course.length][];
+			int[] position = new int[course.length];
+			for (int c = 0; c < course.length; c++) {
+				conflictWeight[c] = new int[neighbours[c].length];
+				for (int k = 0; k < neighbours[c].length; k++)
+					position[neighbours[c][k]] = k;
+				for (int s : courseStudents[c])
+					for (int other : studentCourses[s])
+						if (other != c)
+							conflictWeight[c][position[other]] += studentWeight[s];
+			}
+		}
+	}
+
+	public SchedulingProblem getProblem() {
+		return problem;
+	}
+
+	public int getCourseCount() {
+		return courseSize.length;
+	}
+
+	public int getRoomCount() {
+		return roomIndex.size();
+	}
+
+	public int getStudentCount() {
+		return studentCourses.length;
+	}
+
+	/**
+	 * @return the index of the course in the problem's course list, or -1 if the course isn't part of the problem.
+	 */
+	public int indexOf(Course pCourse) {
+		Integer i = courseIndex.get(pCourse);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @return the index of the room in the problem's room list, or -1 if the room isn't part of the problem.
+	 */
+	public int indexOf(Room pRoom) {
+		Integer i = roomIndex.get(pRoom);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * The room penalty of one room cell. A room without seats takes a single exam: every pair of exams in it costs both sizes + 2, as in
+	 * MyEvaluator. A room with seats takes any number of exams, and only the students that don't fit cost something: one each, + 2 for the
+	 * invigilators if anybody is left standing. O(1).
+	 *
+	 * @param pRoom the room index
+	 * @param pExams exams in the room cell
+	 * @param pStudents students sitting those exams
+	 */
+	int roomCellPenalty(int pRoom, int pExams, int pStudents) {
+		int seats = capacity[pRoom];
+		if (seats == 0)
+			return pExams < 2 ? 0 : (pExams - 1) * pStudents + pExams * (pExams - 1);
+		return pStudents > seats ? pStudents - seats + 2 : 0;
+	}
+
+	/**
+	 * Combines the two parts of the score the same way MyEvaluator does: if the room clashes alone are worse than the number of students, the
+	 * student conflicts are not even looked at and the room clashes are multiplied by 100.
+	 *
+	 * @param pRoomPenalty sum of roomCellPenalty() over every room cell, plus blockedPenalty for every exam in a blocked cell
+	 * @param pStudentPenalty sum of studentWeight * PENALTY[g] over every student and time cell, plus the soft penalty of the objective
+	 * @return the score MyEvaluator would give to a schedule with those penalties
+	 */
+	public int score(int pRoomPenalty, int pStudentPenalty) {
+		if (pRoomPenalty > studentCourses.length)
+			return pRoomPenalty * 100;
+		return pRoomPenalty + pStudentPenalty;
+	}
+}
@@ -10,8 +10,9 @@ public class Evaluator {
 
 	/**
 	 * This is a function that scores a complete assignment of variables. This means that you should give it a complete schedule (all courses have
-	 * times assigned for their exams). If the schedule isn't feasible (two exams should be scheduled in the same room at the same time), the function
-	 * finds that extremely bad and will print a message to this effect to System.err and return Integer.MAX_VALUE.
+	 * times assigned for their exams). If the schedule isn't feasible (two exams should be scheduled in the same room at the same time, or more
+	 * students than seats in a room that has a capacity), the function finds that extremely bad and will print a message to this effect to
+	 * System.err and return Integer.MAX_VALUE.
 	 * 
 	 * This particular function treats student constraints as lower priority, and so simply counts up the number of times that a schedule asks a
 	 * student to be in two exams at the same time. You could envision other scoring functions.
@@ -38,13 +39,29 @@ public class Evaluator {
 				System.err.println("Day " + schedule[i].getDay() + "is an impossible day (" + schedule[i].getCourse().getCourseName() + ")");
 				return Integer.MAX_VALUE;
 			}
+			if (schedule[i].getTimeSlot() >= pInstance.getTimeGrid().getSlots()
+					|| pInstance.getTimeGrid().isBlocked(schedule[i].getDay(), schedule[i].getTimeSlot())) {
+				System.err.println(schedule[i].getCourse().getCourseName() + " is at a slot the exam period doesn't have");
+				return Integer.MAX_VALUE;
+			}
+			/* A room with seats may hold several exams, as long as their students fit: */
+			int capacity = schedule[i].getRoom().getCapacity();
+			int seated = capacity == 0 ? 0 : schedule[i].getCourse().getStudentList().size();
 			for (int j = i + 1; j < courseList.length; j++) {
 				if (schedule[i].getRoom() == schedule[j].getRoom() && schedule[i].getDay() == schedule[j].getDay()
 						&& schedule[i].getTimeSlot() == schedule[j].getTimeSlot()) {
+					if (capacity > 0) {
+						seated += schedule[j].getCourse().getStudentList().size();
+						continue;
+					}
 					System.err.println("Clash Between " + schedule[i].getCourse() + " and " + schedule[j].getCourse());
 					return Integer.MAX_VALUE;
 				}
 			}
+			if (seated > capacity) {
+				System.err.println(seated + " students for the " + capacity + " seats of " + schedule[i].getRoom());
+				return Integer.MAX_VALUE;
+			}
 		}
 		/* Check for student conflicts */
 		int conflicts = 0;
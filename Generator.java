@@ -17,14 +17,17 @@ public class Generator {
 
 	private double crispness;
 
+	private TimeGrid timeGrid;
+
 	Random r;
 
 	/**
 	 * Generator for scheduling problems. There are some things to bear in mind if you want to play with the parameters:
 	 * <UL>
 	 * <LI>Each student takes exactly 5 courses. Thus, the total number of courses must be higher than 5.
-	 * <LI>There are five days in the exam period from 0 to 4 and four time slots per day, so there are 20 possible time slots. Thus, the number of
-	 * courses must be smaller than 20 times the number of rooms, or ALL your schedules will be infeasible or incomplete.
+	 * <LI>There are five days in the exam period from 0 to 4 and four time slots per day, so there are 20 possible time slots (unless another
+	 * TimeGrid is given). Thus, the number of courses must be smaller than 20 times the number of rooms, or ALL your schedules will be
+	 * infeasible or incomplete.
 	 * <LI>This generator creates a number of "Standard Schedules". "Crispness" is the chance that a student will stick to that schedule. So 1.0 will
 	 * be a population of good little robots that don't deviate from the standards at all, and 0.0 will be a student body made up of independent free
 	 * thinkers playing by nobody's rules.
@@ -37,11 +40,22 @@ public class Generator {
 	 * 
 	 */
 	public Generator(int pNumC, int pNumR, int pNumS, double pCrisp) {
+		this(pNumC, pNumR, pNumS, pCrisp, TimeGrid.DEFAULT);
+	}
+
+	/**
+	 * Generator for scheduling problems over another exam period. The number of courses must then be smaller than the open cells of the grid
+	 * times the number of rooms.
+	 * 
+	 * @param pTimeGrid the days, slots and blocked cells of every generated problem
+	 */
+	public Generator(int pNumC, int pNumR, int pNumS, double pCrisp, TimeGrid pTimeGrid) {
 
 		numCourses = pNumC;
 		numRooms = pNumR;
 		numStudents = pNumS;
 		crispness = pCrisp;
+		timeGrid = pTimeGrid;
 		r = new Random();
 	}
 
@@ -65,10 +79,10 @@ public class Generator {
 			roomList[i] = generateRoom(roomList, i);
 		}
 		for (int i = 0; i < numStudents; i++) {
-			studentList[i] = generateStudent(courseList);
+			studentList[i] = generateStudent(courseList, i);
 		}
 
-		return new SchedulingProblem(courseList, roomList, studentList);
+		return new SchedulingProblem(courseList, roomList, studentList, timeGrid);
 
 	}
 
@@ -100,7 +114,7 @@ public class Generator {
 		return new Room(name);
 	}
 
-	private Student generateStudent(Course[] courseList) {
+	private Student generateStudent(Course[] courseList, int id) {
 
 		String name = Student.firstNames[r.nextInt(Student.firstNames.length)] + " " + Student.lastNames[r.nextInt(Student.lastNames.length)];
 		Course[] schedule = new Course[Student.scheduleSize];
@@ -123,7 +137,7 @@ public class Generator {
 			}
 			schedule[i] = tmp;
 		}
-		Student student = new Student(name, schedule);
+		Student student = new Student(id, name, schedule);
 		for (int i = 0; i < schedule.length; i++) {
 			schedule[i].enroll(student);
 		}
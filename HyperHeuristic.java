@@ -0,0 +1,181 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Adaptive operator selection: a portfolio of MoveOperators and a bandit that learns which of them pays off on the problem at hand. Every
+ * step picks an operator by UCB, makes its move, keeps it if the schedule is not worse and rewards the operator with the improvement per
+ * nanosecond it took. The statistics are discounted by DECAY every step, so when the moves that worked early stop working (they always do
+ * as the search converges), the compute goes to whatever works now.
+ *
+ * Not thread-safe: every search needs its own HyperHeuristic.
+ */
+public class HyperHeuristic {
+
+	/*
+	 * Constants to play with:
+	 */
+	final double EXPLORATION = 0.5; //UCB exploration, relative to the best rate seen: higher tries the weaker operators more often.
+	final double DECAY = 0.995; //Weight of the past in the statistics, per step. 1 would never forget.
+
+	private final MoveOperator[] operators;
+	private final double[] plays; //discounted number of times each operator was picked
+	private final double[] gain; //discounted score improvement of each operator
+	private final double[] nanos; //discounted time spent in each operator
+	private final long[] picked; //times each operator was picked (not discounted, for the report)
+	private final long[] kept; //times its move was kept
+	private double totalPlays = 0;
+
+	private EvaluationContext context = null;
+	private int[] moves = new int[0]; //the (course, room, cell) triples of the move being tried
+	private int[] undoRoom = new int[0];
+	private int[] undoCell = new int[0];
+
+	/**
+	 * The default portfolio: relocate, swap, Kempe chain, slot swap and random restart.
+	 */
+	public HyperHeuristic() {
+		this(new MoveOperator[] { new RelocateMove(), new SwapMove(), new KempeChainMove(), new SlotSwapMove(), new RandomRestartMove() });
+	}
+
+	public HyperHeuristic(MoveOperator[] pOperators) {
+		if (pOperators.length == 0)
+			throw new IllegalArgumentException("A hyper-heuristic needs at least one operator");
+		operators = pOperators.clone();
+		plays = new double[operators.length];
+		gain = new double[operators.length];
+		nanos = new double[operators.length];
+		picked = new long[operators.length];
+		kept = new long[operators.length];
+	}
+
+	/**
+	 * Gets the operators ready for a problem and forgets what was learnt on the previous one. Called by step() when the context changes.
+	 */
+	public void prepare(EvaluationContext pContext) {
+		context = pContext;
+		for (MoveOperator operator : operators)
+			operator.prepare(pContext);
+		moves = new int[3 * pContext.getCourseCount()];
+		undoRoom = new int[pContext.getCourseCount()];
+		undoCell = new int[pContext.getCourseCount()];
+		for (int i = 0; i < operators.length; i++) {
+			plays[i] = 0;
+			gain[i] = 0;
+			nanos[i] = 0;
+			picked[i] = 0;
+			kept[i] = 0;
+		}
+		totalPlays = 0;
+	}
+
+	/**
+	 * Tries one move of the operator the bandit picks, keeping it if the schedule is not worse.
+	 *
+	 * @return how much the score went down (0 if the move was taken back or made no difference)
+	 */
+	public int step(IncrementalSchedule pSchedule, Random r) {
+		if (pSchedule.context != context)
+			prepare(pSchedule.context);
+		int op = choose(r);
+		long start = System.nanoTime();
+		int before = pSchedule.score();
+		int count = operators[op].propose(pSchedule, moves, r);
+		for (int i = 0; i < count; i++) {
+			int c = moves[3 * i];
+			undoRoom[i] = pSchedule.room[c];
+			undoCell[i] = pSchedule.cell[c];
+			pSchedule.move(c, moves[3 * i + 1], moves[3 * i + 2]);
+		}
+		int improvement = before - pSchedule.score();
+		if (improvement < 0) {
+			for (int i = count - 1; i >= 0; i--)
+				pSchedule.move(moves[3 * i], undoRoom[i], undoCell[i]);
+			improvement = 0;
+		} else if (count > 0) {
+			kept[op]++;
+		}
+		reward(op, improvement, System.nanoTime() - start);
+		return improvement;
+	}
+
+	/**
+	 * Runs pSteps steps.
+	 *
+	 * @return the total improvement of the score
+	 */
+	public int improve(IncrementalSchedule pSchedule, Random r, int pSteps) {
+		int total = 0;
+		for (int i = 0; i < pSteps; i++)
+			total += step(pSchedule, r);
+		return total;
+	}
+
+	/**
+	 * UCB over the improvement rates: every operator is tried once, then the one with the best rate plus an exploration bonus wins. While no
+	 * operator has improved anything yet the rates are all 0, and the least played operator goes next.
+	 */
+	private int choose(Random r) {
+		double bestRate = 0;
+		for (int i = 0; i < operators.length; i++) {
+			if (picked[i] == 0)
+				return i;
+			bestRate = Math.max(bestRate, rate(i));
+		}
+		int chosen = 0;
+		double chosenValue = Double.NEGATIVE_INFINITY;
+		int ties = 0;
+		for (int i = 0; i < operators.length; i++) {
+			double value;
+			if (bestRate == 0)
+				value = -plays[i];
+			else
+				value = rate(i) + EXPLORATION * bestRate * Math.sqrt(Math.log(totalPlays + 1) / Math.max(plays[i], 1e-9));
+			if (value > chosenValue) {
+				chosenValue = value;
+				chosen = i;
+				ties = 1;
+			} else if (value == chosenValue && r.nextInt(++ties) == 0) {
+				chosen = i;
+			}
+		}
+		return chosen;
+	}
+
+	private void reward(int op, int pImprovement, long pNanos) {
+		for (int i = 0; i < operators.length; i++) {
+			plays[i] *= DECAY;
+			gain[i] *= DECAY;
+			nanos[i] *= DECAY;
+		}
+		totalPlays = totalPlays * DECAY + 1;
+		plays[op] += 1;
+		gain[op] += pImprovement;
+		nanos[op] += Math.max(pNanos, 1);
+		picked[op]++;
+	}
+
+	/**
+	 * @return the recent improvement per nanosecond of an operator
+	 */
+	private double rate(int op) {
+		return nanos[op] == 0 ? 0 : gain[op] / nanos[op];
+	}
+
+	/**
+	 * @return how often each operator was picked and kept, and its recent improvement rate.
+	 */
+	public String operatorReport() {
+		long total = 0;
+		for (long p : picked)
+			total += p;
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < operators.length; i++) {
+			sb.append("\t" + operators[i].getName() + ": picked " + picked[i]);
+			if (total > 0)
+				sb.append(" (" + (100 * picked[i] / total) + "%)");
+			sb.append(", kept " + kept[i] + ", " + String.format("%.3f", rate(i) * 1000000) + " points per ms\n");
+		}
+		return sb.toString();
+	}
+}
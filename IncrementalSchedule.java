@@ -0,0 +1,470 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A complete schedule stored as plain int arrays (a room and a time cell per course) together with the room occupancy and the parts of the
+ * MyEvaluator score: room clashes (students over capacity in rooms with seats, exams in blocked time cells), student clashes and the soft
+ * constraints of the context's Objective. Moving one course is scored by delta
+ * evaluation: the room part is O(1) and the time part only looks at the students of the moved course, so local search never has to rebuild a
+ * ScheduleChoice[] or re-run a full evaluation.
+ *
+ * Not thread-safe. Every thread (or annealing replica) needs its own IncrementalSchedule; the EvaluationContext behind it can be shared.
+ */
+public class IncrementalSchedule {
+
+	final EvaluationContext context;
+
+	final int[] room; //room index of each course
+	final int[] cell; //time cell (day * slots + slot) of each course
+
+	private final int[] occupancy; //exams in each room cell (room * timeCells + time cell)
+	private final int[] occupancySize; //students sitting exams in each room cell
+	private final int[] load; //exams in each time cell, whatever the room
+	private final int[] cellsBefore = new int[Student.scheduleSize]; //scratch for the StudentTerms: one student's time cells before a move...
+	private final int[] cellsAfter = new int[Student.scheduleSize]; //...and after it
+
+	private int roomPenalty;
+	private int studentPenalty;
+	private int softPenalty;
+
+	/**
+	 * Creates a schedule with every course in room 0 at the first time cell. Call {@link #load(ScheduleChoice[])} or
+	 * {@link #randomize(Random)} before using it.
+	 */
+	public IncrementalSchedule(EvaluationContext pContext) {
+		context = pContext;
+		room = new int[pContext.getCourseCount()];
+		cell = new int[pContext.getCourseCount()];
+		occupancy = new int[pContext.roomCells];
+		occupancySize = new int[pContext.roomCells];
+		load = new int[pContext.timeCells];
+		recompute();
+	}
+
+	/**
+	 * Copies a ScheduleChoice[] into this schedule. The choices may come in any order, they are matched to the courses by identity. Choices
+	 * for courses that are not in the problem are ignored, and courses without a choice keep their room and time cell.
+	 */
+	public void load(ScheduleChoice[] pSolution) {
+		for (int i = 0; i < pSolution.length; i++) {
+			int c = context.indexOf(pSolution[i].getCourse());
+			if (c < 0)
+				continue;
+			room[c] = context.indexOf(pSolution[i].getRoom());
+			cell[c] = pSolution[i].getDay() * context.slots + pSolution[i].getTimeSlot();
+		}
+		recompute();
+	}
+
+	/**
+	 * Puts every course in a uniformly random room and open time cell.
+	 */
+	public void randomize(Random r) {
+		for (int c = 0; c < room.length; c++) {
+			room[c] = r.nextInt(context.getRoomCount());
+			cell[c] = context.openCells[r.nextInt(context.openCells.length)];
+		}
+		recompute();
+	}
+
+	/**
+	 * Makes this schedule an exact copy of another one built on the same context.
+	 */
+	public void copyFrom(IncrementalSchedule pOther) {
+		System.arraycopy(pOther.room, 0, room, 0, room.length);
+		System.arraycopy(pOther.cell, 0, cell, 0, cell.length);
+		System.arraycopy(pOther.occupancy, 0, occupancy, 0, occupancy.length);
+		System.arraycopy(pOther.occupancySize, 0, occupancySize, 0, occupancySize.length);
+		System.arraycopy(pOther.load, 0, load, 0, load.length);
+		roomPenalty = pOther.roomPenalty;
+		studentPenalty = pOther.studentPenalty;
+		softPenalty = pOther.softPenalty;
+	}
+
+	/**
+	 * @return the score MyEvaluator would give to this schedule.
+	 */
+	public int score() {
+		return context.score(roomPenalty, studentPenalty + softPenalty);
+	}
+
+	public int getRoomPenalty() {
+		return roomPenalty;
+	}
+
+	public int getStudentPenalty() {
+		return studentPenalty;
+	}
+
+	public int getSoftPenalty() {
+		return softPenalty;
+	}
+
+	/**
+	 * @return everything in the score that only depends on the time cells: the student clashes plus the soft constraints.
+	 */
+	public int getTimePenalty() {
+		return studentPenalty + softPenalty;
+	}
+
+	/**
+	 * @return how much the room clash penalty (blocked cells included) changes if course c moves to (pRoom, pCell). O(1).
+	 */
+	public int roomDelta(int c, int pRoom, int pCell) {
+		int from = room[c] * context.timeCells + cell[c];
+		int to = pRoom * context.timeCells + pCell;
+		if (from == to)
+			return 0;
+		int size = context.courseSize[c];
+		int removed;
+		int added;
+		if (context.capacity[room[c]] == 0 && context.capacity[pRoom] == 0) {
+			removed = (occupancy[from] - 1) * (size + 2) + (occupancySize[from] - size);
+			added = occupancy[to] * (size + 2) + occupancySize[to];
+		} else {
+			removed = context.roomCellPenalty(room[c], occupancy[from], occupancySize[from])
+					- context.roomCellPenalty(room[c], occupancy[from] - 1, occupancySize[from] - size);
+			added = context.roomCellPenalty(pRoom, occupancy[to] + 1, occupancySize[to] + size)
+					- context.roomCellPenalty(pRoom, occupancy[to], occupancySize[to]);
+		}
+		if (context.blocked[pCell])
+			added += context.blockedPenalty;
+		if (context.blocked[cell[c]])
+			removed += context.blockedPenalty;
+		return added - removed;
+	}
+
+	/**
+	 * @return the seats left in room pRoom at time cell pCell: its capacity minus the students already there. A room without seats has
+	 *         Integer.MAX_VALUE left while it is empty and 0 once it has an exam. O(1).
+	 */
+	public int residualCapacity(int pRoom, int pCell) {
+		int rc = pRoom * context.timeCells + pCell;
+		if (context.capacity[pRoom] == 0)
+			return occupancy[rc] == 0 ? Integer.MAX_VALUE : 0;
+		return context.capacity[pRoom] - occupancySize[rc];
+	}
+
+	/**
+	 * @return true if course c can move to (pRoom, pCell) without a room clash or anybody left standing. O(1).
+	 */
+	public boolean fits(int c, int pRoom, int pCell) {
+		if (room[c] == pRoom && cell[c] == pCell)
+			return context.capacity[pRoom] == 0 ? occupancy[pRoom * context.timeCells + pCell] == 1 : residualCapacity(pRoom, pCell) >= 0;
+		return residualCapacity(pRoom, pCell) >= context.courseSize[c];
+	}
+
+	/**
+	 * @return how much the student conflict penalty changes if course c moves to time cell pCell. O(students in c).
+	 */
+	public int studentDelta(int c, int pCell) {
+		return studentDelta(c, pCell, -1);
+	}
+
+	/**
+	 * The same as studentDelta(c, pCell), but leaving out the students that also take course pSkip.
+	 */
+	private int studentDelta(int c, int pCell, int pSkip) {
+		int from = cell[c];
+		if (from == pCell)
+			return 0;
+		int delta = 0;
+		students: for (int s : context.courseStudents[c]) {
+			int atFrom = 0;
+			int atTo = 0;
+			for (int other : context.studentCourses[s]) {
+				if (other == c)
+					continue;
+				if (other == pSkip)
+					continue students;
+				if (cell[other] == from)
+					atFrom++;
+				else if (cell[other] == pCell)
+					atTo++;
+			}
+			delta += context.studentWeight[s] * (EvaluationContext.PENALTY[atTo + 1] - EvaluationContext.PENALTY[atTo]
+					+ EvaluationContext.PENALTY[atFrom] - EvaluationContext.PENALTY[atFrom + 1]);
+		}
+		return delta;
+	}
+
+	/**
+	 * @return how much the soft penalty changes if course c moves to time cell pCell. 0 right away if the objective is empty.
+	 */
+	public int softDelta(int c, int pCell) {
+		if (context.objective.isEmpty())
+			return 0;
+		return context.objective.delta(context, cell, load, c, pCell, cellsBefore, cellsAfter);
+	}
+
+	/**
+	 * @return how much getTimePenalty() changes if course c moves to time cell pCell.
+	 */
+	public int timeDelta(int c, int pCell) {
+		return studentDelta(c, pCell) + softDelta(c, pCell);
+	}
+
+	/**
+	 * @return the score this schedule would have if course c moved to (pRoom, pCell). The schedule itself does not change.
+	 */
+	public int scoreAfterMove(int c, int pRoom, int pCell) {
+		return context.score(roomPenalty + roomDelta(c, pRoom, pCell), studentPenalty + softPenalty + timeDelta(c, pCell));
+	}
+
+	/**
+	 * Moves course c to (pRoom, pCell) and updates the score.
+	 */
+	public void move(int c, int pRoom, int pCell) {
+		roomPenalty += roomDelta(c, pRoom, pCell);
+		studentPenalty += studentDelta(c, pCell);
+		softPenalty += softDelta(c, pCell);
+		int from = room[c] * context.timeCells + cell[c];
+		int to = pRoom * context.timeCells + pCell;
+		occupancy[from]--;
+		occupancySize[from] -= context.courseSize[c];
+		occupancy[to]++;
+		occupancySize[to] += context.courseSize[c];
+		load[cell[c]]--;
+		load[pCell]++;
+		room[c] = pRoom;
+		cell[c] = pCell;
+	}
+
+	/**
+	 * @return the score this schedule would have if courses a and b traded their rooms and time cells. The room part is O(1): both room
+	 *         cells keep their number of exams and only trade the sizes (which is all that matters in a room with seats), and no exam
+	 *         enters or leaves a blocked cell that one doesn't leave or enter. The student part is two student deltas, leaving out the
+	 *         students that take both courses (they have an exam in each of the two cells before and after). The schedule itself does not
+	 *         change.
+	 */
+	public int scoreAfterSwap(int a, int b) {
+		int ta = cell[a];
+		int tb = cell[b];
+		int cellA = room[a] * context.timeCells + ta;
+		int cellB = room[b] * context.timeCells + tb;
+		if (cellA == cellB)
+			return score();
+		int sizeChange = context.courseSize[b] - context.courseSize[a]; //what room cell A gains, and room cell B loses
+		int roomChange;
+		if (context.capacity[room[a]] == 0 && context.capacity[room[b]] == 0)
+			roomChange = (occupancy[cellA] - 1) * sizeChange - (occupancy[cellB] - 1) * sizeChange;
+		else
+			roomChange = context.roomCellPenalty(room[a], occupancy[cellA], occupancySize[cellA] + sizeChange)
+					- context.roomCellPenalty(room[a], occupancy[cellA], occupancySize[cellA])
+					+ context.roomCellPenalty(room[b], occupancy[cellB], occupancySize[cellB] - sizeChange)
+					- context.roomCellPenalty(room[b], occupancy[cellB], occupancySize[cellB]);
+		int timeChange = 0;
+		if (ta != tb) {
+			timeChange = studentDelta(a, tb, b) + studentDelta(b, ta, a);
+			if (!context.objective.isEmpty()) {
+				/* The soft terms have no closed form, so score b's move on top of a's, with a moved in cell[] and load[] only: */
+				timeChange += softDelta(a, tb);
+				cell[a] = tb;
+				load[ta]--;
+				load[tb]++;
+				timeChange += softDelta(b, ta);
+				cell[a] = ta;
+				load[ta]++;
+				load[tb]--;
+			}
+		}
+		return context.score(roomPenalty + roomChange, studentPenalty + softPenalty + timeChange);
+	}
+
+	/**
+	 * Courses a and b trade their rooms and time cells.
+	 */
+	public void swap(int a, int b) {
+		int roomA = room[a];
+		int cellA = cell[a];
+		move(a, room[b], cell[b]);
+		move(b, roomA, cellA);
+	}
+
+	/**
+	 * Finds the Kempe chain of course c between its time cell and pOther: c, the courses in pOther sharing students with it, the courses in
+	 * c's cell sharing students with those, and so on. Moving the whole chain to the other cell never puts two courses with a common student
+	 * together, because the chain takes all of them along.
+	 *
+	 * @param pChain filled with the courses of the chain, must have room for every course
+	 * @param pMark scratch space with an int per course and per student (see scoreAfterKempe()); pMark[u] is set to pStamp for every course
+	 *        of the chain
+	 * @param pStamp a value that is in no pMark[u] yet
+	 * @return the number of courses in the chain
+	 */
+	public int kempeChain(int c, int pOther, int[] pChain, int[] pMark, int pStamp) {
+		int first = cell[c];
+		int size = 0;
+		pChain[size++] = c;
+		pMark[c] = pStamp;
+		for (int head = 0; head < size; head++) {
+			int u = pChain[head];
+			int other = cell[u] == first ? pOther : first;
+			for (int v : context.neighbours[u]) {
+				if (pMark[v] != pStamp && cell[v] == other) {
+					pMark[v] = pStamp;
+					pChain[size++] = v;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the score this schedule would have if every course of the Kempe chain moved from pFirst to pSecond or back, keeping its room.
+	 *         Room cells are updated in closed form; each student of the chain is scored once, with its exam counts in the two cells before
+	 *         and after. The schedule itself does not change.
+	 * @param pChain the chain, from kempeChain()
+	 * @param pMark the same scratch space kempeChain() used, with pStamp for every course of the chain. Students get marked with pStamp too,
+	 *        so it needs an int per course and per student.
+	 */
+	public int scoreAfterKempe(int[] pChain, int pSize, int pFirst, int pSecond, int[] pMark, int pStamp) {
+		/* Rooms: every room cell of the two time cells that a chain course leaves or enters. */
+		int roomChange = 0;
+		if (context.blocked[pFirst] != context.blocked[pSecond]) {
+			int fromFirst = 0;
+			for (int i = 0; i < pSize; i++)
+				if (cell[pChain[i]] == pFirst)
+					fromFirst++;
+			int intoSecond = fromFirst - (pSize - fromFirst); //how many more exams pSecond has afterwards
+			roomChange += context.blockedPenalty * (context.blocked[pSecond] ? intoSecond : -intoSecond);
+		}
+		for (int i = 0; i < pSize; i++) {
+			int rm = room[pChain[i]];
+			int a = rm * context.timeCells + pFirst;
+			int b = rm * context.timeCells + pSecond;
+			boolean done = false;
+			for (int j = 0; j < i && !done; j++)
+				done = room[pChain[j]] == rm;
+			if (done)
+				continue; //An earlier course of the chain already took care of this room.
+			int leaveA = 0, sizeA = 0, leaveB = 0, sizeB = 0;
+			for (int j = i; j < pSize; j++) {
+				int u = pChain[j];
+				if (room[u] != rm)
+					continue;
+				if (cell[u] == pFirst) {
+					leaveA++;
+					sizeA += context.courseSize[u];
+				} else {
+					leaveB++;
+					sizeB += context.courseSize[u];
+				}
+			}
+			roomChange += context.roomCellPenalty(rm, occupancy[a] - leaveA + leaveB, occupancySize[a] - sizeA + sizeB)
+					+ context.roomCellPenalty(rm, occupancy[b] - leaveB + leaveA, occupancySize[b] - sizeB + sizeA)
+					- context.roomCellPenalty(rm, occupancy[a], occupancySize[a]) - context.roomCellPenalty(rm, occupancy[b], occupancySize[b]);
+		}
+
+		/* Students: the ones with an exam in the chain. Their other exams in the two cells stay where they are. */
+		int timeChange = 0;
+		int courses = context.getCourseCount();
+		for (int i = 0; i < pSize; i++) {
+			for (int s : context.courseStudents[pChain[i]]) {
+				if (pMark[courses + s] == pStamp)
+					continue;
+				pMark[courses + s] = pStamp;
+				int inFirst = 0, inSecond = 0, afterFirst = 0, afterSecond = 0;
+				for (int u : context.studentCourses[s]) {
+					boolean moves = pMark[u] == pStamp;
+					if (cell[u] == pFirst) {
+						inFirst++;
+						if (moves)
+							afterSecond++;
+						else
+							afterFirst++;
+					} else if (cell[u] == pSecond) {
+						inSecond++;
+						if (moves)
+							afterFirst++;
+						else
+							afterSecond++;
+					}
+				}
+				timeChange += context.studentWeight[s] * (EvaluationContext.PENALTY[afterFirst] + EvaluationContext.PENALTY[afterSecond]
+						- EvaluationContext.PENALTY[inFirst] - EvaluationContext.PENALTY[inSecond]);
+			}
+		}
+
+		if (!context.objective.isEmpty()) {
+			/* No closed form for the soft terms: score the moves one after the other in cell[] and load[] only, then put them back. */
+			for (int i = 0; i < pSize; i++) {
+				int u = pChain[i];
+				int to = cell[u] == pFirst ? pSecond : pFirst;
+				timeChange += softDelta(u, to);
+				load[cell[u]]--;
+				load[to]++;
+				cell[u] = to;
+			}
+			for (int i = 0; i < pSize; i++) {
+				int u = pChain[i];
+				int back = cell[u] == pFirst ? pSecond : pFirst;
+				load[cell[u]]--;
+				load[back]++;
+				cell[u] = back;
+			}
+		}
+		return context.score(roomPenalty + roomChange, studentPenalty + softPenalty + timeChange);
+	}
+
+	/**
+	 * Moves every course of a Kempe chain from pFirst to pSecond or back, keeping its room.
+	 */
+	public void kempe(int[] pChain, int pSize, int pFirst, int pSecond) {
+		for (int i = 0; i < pSize; i++) {
+			int u = pChain[i];
+			move(u, room[u], cell[u] == pFirst ? pSecond : pFirst);
+		}
+	}
+
+	/**
+	 * @return a fresh ScheduleChoice[] with this schedule, ordered like the problem's course list.
+	 */
+	public ScheduleChoice[] toChoices() {
+		Course[] course = context.getProblem().getCourseList();
+		Room[] rooms = context.getProblem().getRoomList();
+		ScheduleChoice[] choice = new ScheduleChoice[course.length];
+		for (int c = 0; c < course.length; c++)
+			choice[c] = new ScheduleChoice(course[c], rooms[room[c]], cell[c] / context.slots, cell[c] % context.slots);
+		return choice;
+	}
+
+	/**
+	 * Rebuilds the occupancy and all the penalties from scratch.
+	 */
+	private void recompute() {
+		Arrays.fill(occupancy, 0);
+		Arrays.fill(occupancySize, 0);
+		Arrays.fill(load, 0);
+		for (int c = 0; c < room.length; c++) {
+			int rc = room[c] * context.timeCells + cell[c];
+			occupancy[rc]++;
+			occupancySize[rc] += context.courseSize[c];
+			load[cell[c]]++;
+		}
+		/* Every pair in a room cell without seats costs both sizes + 2, and each exam is in (n - 1) pairs; see roomCellPenalty(): */
+		roomPenalty = 0;
+		for (int rc = 0; rc < occupancy.length; rc++)
+			if (occupancy[rc] > 0)
+				roomPenalty += context.roomCellPenalty(rc / context.timeCells, occupancy[rc], occupancySize[rc]);
+		for (int t = 0; t < load.length; t++)
+			if (context.blocked[t])
+				roomPenalty += load[t] * context.blockedPenalty;
+
+		studentPenalty = 0;
+		for (int s = 0; s < context.studentCourses.length; s++) {
+			int[] courses = context.studentCourses[s];
+			for (int j = 0; j < courses.length; j++) {
+				int before = 0;
+				for (int k = 0; k < j; k++)
+					if (cell[courses[k]] == cell[courses[j]])
+						before++;
+				studentPenalty += context.studentWeight[s] * (EvaluationContext.PENALTY[before + 1] - EvaluationContext.PENALTY[before]);
+			}
+		}
+
+		softPenalty = context.objective.isEmpty() ? 0 : context.objective.penalty(context, cell, load, cellsBefore);
+	}
+}
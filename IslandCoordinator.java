@@ -0,0 +1,221 @@
+package scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Spreads one hard problem over several processes (on this machine or others), each running islands of the genetic algorithm (see
+ * IslandWorker). Every island reports its best individual now and then; the coordinator keeps the best of all of them and sends it back to
+ * any island that is doing worse, so good schedules spread while every island keeps its own population. When the time is up, or a schedule
+ * is proven optimal, every island is told to stop.
+ *
+ * An island that dies or stops answering is dropped: what it reported before stays, and the others carry on. The run only fails if no
+ * island ever reports anything.
+ */
+public class IslandCoordinator {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int READ_TIMEOUT_MILLISECONDS = 30000; //An island that says nothing for this long is considered dead.
+	final int GRACE_MILLISECONDS = 5000; //How long to wait for the last reports once the islands were told to stop.
+
+	private final ServerSocket server;
+	private final EvaluationContext context;
+	private final LowerBound lowerBound;
+
+	/* The state of the run, guarded by this: */
+	private long deadline = 0;
+	private boolean stopping = false;
+	private int[] bestGenome = null;
+	private int bestViolations = Integer.MAX_VALUE;
+	private int joined = 0; //islands that connected
+	private int live = 0; //islands still connected
+	private int lost = 0; //islands dropped before they were told to stop
+	private long migrants = 0; //reports received
+
+	/**
+	 * Binds the port. Islands may connect from then on; the run starts with solve().
+	 *
+	 * @param pPort the port to listen on (0: any free port, see getPort())
+	 * @param pBindAddress the address to listen on (null: every address, so islands on other machines can connect)
+	 * @param pProblem the problem to solve
+	 * @throws IOException if the port can't be bound
+	 */
+	public IslandCoordinator(int pPort, InetAddress pBindAddress, SchedulingProblem pProblem) throws IOException {
+		context = EvaluationContext.forProblem(pProblem);
+		lowerBound = new LowerBound(context);
+		server = new ServerSocket(pPort, 50, pBindAddress);
+	}
+
+	/**
+	 * @return the port the islands connect to
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Runs the islands that connect for pMilliseconds (less if a schedule is proven optimal).
+	 *
+	 * @return the best schedule any island found, ordered like the problem's course list
+	 * @throws IllegalStateException if no island reported a schedule
+	 */
+	public ScheduleChoice[] solve(int pMilliseconds) throws InterruptedException {
+		synchronized (this) {
+			deadline = System.currentTimeMillis() + pMilliseconds;
+		}
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				acceptLoop();
+			}
+		}, "island coordinator");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		try {
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				while (!stopping && now < deadline) {
+					wait(deadline - now);
+					now = System.currentTimeMillis();
+				}
+				stopping = true;
+				long graceEnd = now + GRACE_MILLISECONDS;
+				while (live > 0 && now < graceEnd) {
+					wait(graceEnd - now);
+					now = System.currentTimeMillis();
+				}
+				if (bestGenome == null)
+					throw new IllegalStateException("No island reported a schedule");
+				return IslandProtocol.unpack(context, bestGenome);
+			}
+		} finally {
+			try {
+				server.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private void acceptLoop() {
+		int island = 0;
+		while (true) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				return; //solve() closed the server.
+			}
+			final int id = island++;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					serve(socket, id);
+				}
+			}, "island " + id);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Sends the problem to an island and answers its reports until it is told to stop or goes away.
+	 */
+	private void serve(Socket pSocket, int pIsland) {
+		synchronized (this) {
+			joined++;
+			live++;
+		}
+		boolean told = false;
+		try {
+			pSocket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+			pSocket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(pSocket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(pSocket.getOutputStream()));
+			long left;
+			synchronized (this) {
+				left = Math.max(deadline - System.currentTimeMillis(), 0);
+			}
+			out.writeInt(IslandProtocol.MAGIC);
+			out.writeInt((int) Math.min(left, Integer.MAX_VALUE));
+			ProblemCodec.writeProblem(out, context.getProblem());
+			out.flush();
+
+			while (!told) {
+				byte frame = in.readByte();
+				if (frame != IslandProtocol.MIGRANT)
+					throw new IOException("Unexpected frame " + frame);
+				int violations = in.readInt();
+				int[] genome = IslandProtocol.readGenome(in, context);
+				int[] immigrant = null;
+				int immigrantViolations;
+				synchronized (this) {
+					migrants++;
+					if (violations < bestViolations) {
+						bestViolations = violations;
+						bestGenome = genome;
+						if (lowerBound.isOptimal(violations))
+							stopping = true;
+						notifyAll();
+					} else if (bestViolations < violations) {
+						immigrant = bestGenome;
+					}
+					immigrantViolations = bestViolations;
+					told = stopping;
+				}
+				if (told) {
+					out.writeByte(IslandProtocol.STOP);
+				} else if (immigrant != null) {
+					out.writeByte(IslandProtocol.IMMIGRANT);
+					out.writeInt(immigrantViolations);
+					IslandProtocol.writeGenome(out, context, immigrant);
+				} else {
+					out.writeByte(IslandProtocol.NONE);
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			Trace.warn("Dropping island " + pIsland + ": " + e);
+		} finally {
+			try {
+				pSocket.close();
+			} catch (IOException ignored) {
+			}
+			synchronized (this) {
+				live--;
+				if (!told)
+					lost++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return how many islands took part, how many were lost and the best score.
+	 */
+	public synchronized String islandReport() {
+		return "\t" + joined + " islands (" + lost + " lost), " + migrants + " migrants, best " + bestViolations + "\n";
+	}
+
+	/**
+	 * Solves a generated problem with the islands that connect.
+	 *
+	 * @param args the port (optional, 7346 if not given) and the time budget in milliseconds (optional, 60000 if not given)
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 7346;
+		int budget = args.length > 1 ? Integer.parseInt(args[1]) : 60000;
+		SchedulingProblem problem = new Generator(150, 10, 2500, 0.8).generateProblem(0);
+		IslandCoordinator coordinator = new IslandCoordinator(port, null, problem);
+		System.out.println("Waiting for islands on port " + coordinator.getPort() + " for " + budget + " ms.");
+		ScheduleChoice[] schedule = coordinator.solve(budget);
+		System.out.print(coordinator.islandReport());
+		System.out.println("Evaluator: " + new Evaluator().violatedConstraints(problem, schedule) + " violations.");
+	}
+}
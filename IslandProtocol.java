@@ -0,0 +1,92 @@
+package scheduler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * What the IslandCoordinator and its IslandWorkers say to each other over TCP.
+ *
+ * When a worker connects, the coordinator sends MAGIC, the milliseconds left in the run and the problem (ProblemCodec). From then on the
+ * worker talks first: MIGRANT (int: violations, genome) every Scheduler1.MIGRATION_INTERVAL generations and once more when its island is
+ * done, and the coordinator answers each one with IMMIGRANT (int: violations, genome), NONE or STOP.
+ *
+ * A genome is the room cell (room * timeCells + time cell, as in DiversityMonitor) of every course, in the order of the course list, in as
+ * few bytes as the number of room cells allows: one byte per course for up to 256 room cells, two for up to 65536, four above that.
+ */
+public class IslandProtocol {
+
+	static final int MAGIC = 0x45584d49; //"EXMI"
+
+	/* Frames: */
+	static final byte MIGRANT = 1;
+	static final byte IMMIGRANT = 2;
+	static final byte NONE = 3;
+	static final byte STOP = 4;
+
+	private IslandProtocol() {
+	}
+
+	/**
+	 * @return the room cells of a schedule ordered like the course list
+	 */
+	static int[] pack(EvaluationContext pContext, ScheduleChoice[] pSchedule) {
+		int[] genome = new int[pSchedule.length];
+		for (int c = 0; c < genome.length; c++) {
+			ScheduleChoice choice = pSchedule[c];
+			genome[c] = pContext.indexOf(choice.getRoom()) * pContext.timeCells + choice.getDay() * pContext.slots + choice.getTimeSlot();
+		}
+		return genome;
+	}
+
+	/**
+	 * @return the schedule of a genome, ordered like the course list
+	 */
+	static ScheduleChoice[] unpack(EvaluationContext pContext, int[] pGenome) {
+		Course[] course = pContext.getProblem().getCourseList();
+		Room[] room = pContext.getProblem().getRoomList();
+		ScheduleChoice[] schedule = new ScheduleChoice[pGenome.length];
+		for (int c = 0; c < pGenome.length; c++) {
+			int cell = pGenome[c] % pContext.timeCells;
+			schedule[c] = new ScheduleChoice(course[c], room[pGenome[c] / pContext.timeCells], cell / pContext.slots, cell % pContext.slots);
+		}
+		return schedule;
+	}
+
+	private static int cellBytes(EvaluationContext pContext) {
+		if (pContext.roomCells <= 1 << 8)
+			return 1;
+		return pContext.roomCells <= 1 << 16 ? 2 : 4;
+	}
+
+	static void writeGenome(DataOutputStream pOut, EvaluationContext pContext, int[] pGenome) throws IOException {
+		int bytes = cellBytes(pContext);
+		for (int cell : pGenome) {
+			if (bytes == 1)
+				pOut.writeByte(cell);
+			else if (bytes == 2)
+				pOut.writeShort(cell);
+			else
+				pOut.writeInt(cell);
+		}
+	}
+
+	/**
+	 * @throws IOException if the stream can't be read or a room cell is out of range
+	 */
+	static int[] readGenome(DataInputStream pIn, EvaluationContext pContext) throws IOException {
+		int bytes = cellBytes(pContext);
+		int[] genome = new int[pContext.getCourseCount()];
+		for (int c = 0; c < genome.length; c++) {
+			if (bytes == 1)
+				genome[c] = pIn.readUnsignedByte();
+			else if (bytes == 2)
+				genome[c] = pIn.readUnsignedShort();
+			else
+				genome[c] = pIn.readInt();
+			if (genome[c] < 0 || genome[c] >= pContext.roomCells)
+				throw new IOException("Room cell " + genome[c] + " of course " + c + " is out of range");
+		}
+		return genome;
+	}
+}
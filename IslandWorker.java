@@ -0,0 +1,127 @@
+package scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * One island of an IslandCoordinator's run: a Scheduler1 whose population trades its best individual for the best of all the islands every
+ * MIGRATION_INTERVAL generations. If the coordinator goes away, the island stops.
+ */
+public class IslandWorker implements Migration {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int READ_TIMEOUT_MILLISECONDS = 30000; //A coordinator that doesn't answer a report for this long is considered gone.
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private final EvaluationContext context;
+	private final Scheduler1 scheduler = new Scheduler1();
+	private final int milliseconds;
+
+	/**
+	 * Connects to the coordinator and gets the problem.
+	 *
+	 * @throws IOException if the coordinator can't be reached or doesn't send a problem
+	 */
+	public IslandWorker(String pHost, int pPort) throws IOException {
+		socket = new Socket(pHost, pPort);
+		try {
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			if (in.readInt() != IslandProtocol.MAGIC)
+				throw new IOException(pHost + ":" + pPort + " is not an island coordinator");
+			milliseconds = in.readInt();
+			context = EvaluationContext.forProblem(ProblemCodec.readProblem(in));
+			/* Waiting for the run to start may take any time, but once it runs a hung coordinator must not hold up the island: */
+			socket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		scheduler.migration = this;
+	}
+
+	/**
+	 * Runs the island until the coordinator says stop, its time is up or the coordinator is gone, and sends the coordinator its final best.
+	 *
+	 * @return the best schedule of this island
+	 */
+	public ScheduleChoice[] run() {
+		try {
+			scheduler.stopAt = System.currentTimeMillis() + milliseconds;
+			ScheduleChoice[] best = scheduler.schedule(context.getProblem());
+			if (scheduler.stopAt != 0)
+				exchange(best, scheduler.getViolations(context.getProblem(), best));
+			return best;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * @see scheduler.Migration#exchange(scheduler.ScheduleChoice[], int)
+	 */
+	public ScheduleChoice[] exchange(ScheduleChoice[] pBest, int pViolations) {
+		try {
+			out.writeByte(IslandProtocol.MIGRANT);
+			out.writeInt(pViolations);
+			IslandProtocol.writeGenome(out, context, IslandProtocol.pack(context, pBest));
+			out.flush();
+			byte frame = in.readByte();
+			switch (frame) {
+			case IslandProtocol.IMMIGRANT:
+				in.readInt();
+				return IslandProtocol.unpack(context, IslandProtocol.readGenome(in, context));
+			case IslandProtocol.NONE:
+				return null;
+			case IslandProtocol.STOP:
+				scheduler.stopAt = 0;
+				return null;
+			default:
+				throw new IOException("Unexpected frame " + frame);
+			}
+		} catch (IOException e) {
+			Trace.warn("Lost the island coordinator, stopping: " + e);
+			scheduler.stopAt = 0;
+			return null;
+		}
+	}
+
+	/**
+	 * Runs islands for a coordinator, one thread each.
+	 *
+	 * @param args the host of the coordinator (optional, localhost if not given), its port (optional, 7346 if not given) and the number of
+	 *            islands (optional, one per core if not given)
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final String host = args.length > 0 ? args[0] : "localhost";
+		final int port = args.length > 1 ? Integer.parseInt(args[1]) : 7346;
+		int islands = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		Thread[] thread = new Thread[islands];
+		for (int i = 0; i < islands; i++) {
+			thread[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						new IslandWorker(host, port).run();
+					} catch (IOException e) {
+						Trace.warn("Could not join the island coordinator: " + e);
+					}
+				}
+			}, "island " + i);
+			thread[i].start();
+		}
+		for (Thread t : thread)
+			t.join();
+	}
+}
@@ -0,0 +1,45 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Picks a random course and another open time cell, and moves the whole Kempe chain between the two cells (see IncrementalSchedule.kempeChain()).
+ * Every course of the chain changes cell and keeps its room. The chain is scored in closed form before it is proposed, and a chain that
+ * would make the schedule worse is not proposed at all.
+ */
+public class KempeChainMove implements MoveOperator {
+
+	private int[] chain = new int[0]; //courses of the chain, in the order they were found
+	private int[] mark = new int[0]; //scratch space for IncrementalSchedule.kempeChain() and scoreAfterKempe()
+	private int stamp = 0;
+
+	public String getName() {
+		return "kempe-chain";
+	}
+
+	public void prepare(EvaluationContext pContext) {
+		chain = new int[pContext.getCourseCount()];
+		mark = new int[pContext.getCourseCount() + pContext.getStudentCount()];
+		stamp = 0;
+	}
+
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r) {
+		EvaluationContext context = pSchedule.context;
+		int c = r.nextInt(context.getCourseCount());
+		int first = pSchedule.cell[c];
+		int second = context.openCells[r.nextInt(context.openCells.length)];
+		if (second == first)
+			return 0;
+
+		int size = pSchedule.kempeChain(c, second, chain, mark, ++stamp);
+		if (pSchedule.scoreAfterKempe(chain, size, first, second, mark, stamp) > pSchedule.score())
+			return 0;
+		for (int i = 0; i < size; i++) {
+			int u = chain[i];
+			pMoves[3 * i] = u;
+			pMoves[3 * i + 1] = pSchedule.room[u];
+			pMoves[3 * i + 2] = pSchedule.cell[u] == first ? second : first;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,29 @@
+package scheduler;
+
+/**
+ * Soft constraint: every student sitting an exam in the last slot of a day (7:00 with the default ScheduleChoice.times) costs 1.
+ */
+public class LateSlotTerm implements ObjectiveTerm {
+
+	public String getName() {
+		return "late-slot";
+	}
+
+	public int penalty(EvaluationContext pContext, int[] pCell, int[] pLoad) {
+		int total = 0;
+		for (int c = 0; c < pCell.length; c++)
+			if (isLate(pContext, pCell[c]))
+				total += pContext.courseSize[c];
+		return total;
+	}
+
+	public int delta(EvaluationContext pContext, int[] pCell, int[] pLoad, int c, int pTo) {
+		int before = isLate(pContext, pCell[c]) ? 1 : 0;
+		int after = isLate(pContext, pTo) ? 1 : 0;
+		return (after - before) * pContext.courseSize[c];
+	}
+
+	private boolean isLate(EvaluationContext pContext, int pCell) {
+		return pCell % pContext.slots == pContext.slots - 1;
+	}
+}
@@ -0,0 +1,168 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A lower bound on the score MyEvaluator can give to any schedule of a problem. When a scheduler finds a schedule with this score, no better one
+ * exists and it can stop right away. The bound comes from two facts:
+ * <UL>
+ * <LI>Rooms: if there are more exams than room cells, some exams must share a room cell, and every pair sharing one costs at least twice the
+ * smallest course size plus 2. Rooms with seats may be shared for free, so there is no room bound if any room has a capacity.
+ * <LI>Students: in a clique of the conflict graph (courses that all share students with each other) that is bigger than the number of time
+ * cells, some pairs must share a time cell. A student with g exams in the same time cell costs at least g * (g - 1), that is 2 per clashing
+ * pair, so each forced pair costs at least twice its number of shared students. The cliques come from a greedy clique cover, so they don't
+ * share pairs and their bounds add up.
+ * </UL>
+ */
+public class LowerBound {
+
+	private final int bound;
+
+	private final int roomBound;
+
+	private final int studentBound;
+
+	private final ArrayList<int[]> cliques = new ArrayList<int[]>(); //The cliques that contribute to the student bound.
+
+	private final EvaluationContext context;
+
+	/**
+	 * Computes the bound. O(courses * conflicts * clique size), much cheaper than a single generation of the Genetic Algorithm.
+	 */
+	public LowerBound(EvaluationContext pContext) {
+		context = pContext;
+		roomBound = computeRoomBound();
+		studentBound = computeStudentBound();
+		/* Same rule as EvaluationContext.score(), applied to the smallest penalties possible: */
+		bound = pContext.score(roomBound, studentBound);
+	}
+
+	/**
+	 * @return no schedule of the problem has a MyEvaluator score below this.
+	 */
+	public int getBound() {
+		return bound;
+	}
+
+	public int getRoomBound() {
+		return roomBound;
+	}
+
+	public int getStudentBound() {
+		return studentBound;
+	}
+
+	/**
+	 * @return true if a schedule with the given score is proven optimal.
+	 */
+	public boolean isOptimal(int pScore) {
+		return pScore <= bound;
+	}
+
+	private int computeRoomBound() {
+		int exams = context.getCourseCount();
+		int cells = context.roomCells;
+		if (exams <= cells || cells == 0 || context.hasCapacities)
+			return 0;
+		int smallest = Integer.MAX_VALUE;
+		for (int size : context.courseSize)
+			smallest = Math.min(smallest, size);
+		return forcedPairs(exams, cells) * (2 * smallest + 2);
+	}
+
+	private int computeStudentBound() {
+		int courses = context.getCourseCount();
+		int words = (courses + 63) / 64;
+		long[][] adjacent = new long[courses][words];
+		for (int c = 0; c < courses; c++)
+			for (int u : context.neighbours[c])
+				adjacent[c][u >> 6] |= 1L << u;
+
+		/* Greedy clique cover, starting from the courses with the most neighbours: */
+		Integer[] order = new Integer[courses];
+		for (int c = 0; c < courses; c++)
+			order[c] = c;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return context.neighbours[b].length - context.neighbours[a].length;
+			}
+		});
+		boolean[] covered = new boolean[courses];
+		int[] clique = new int[courses];
+		int total = 0;
+		for (int c : order) {
+			if (covered[c])
+				continue;
+			int size = 0;
+			clique[size++] = c;
+			covered[c] = true;
+			for (int u : context.neighbours[c]) {
+				if (covered[u])
+					continue;
+				boolean joins = true;
+				for (int k = 1; k < size && joins; k++)
+					joins = (adjacent[clique[k]][u >> 6] & (1L << u)) != 0;
+				if (joins) {
+					clique[size++] = u;
+					covered[u] = true;
+				}
+			}
+			if (size > context.timeCells) {
+				int forced = forcedPairs(size, context.timeCells);
+				total += 2 * smallestWeights(clique, size, forced);
+				cliques.add(Arrays.copyOf(clique, size));
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return the smallest number of pairs sharing a bin when pItems go into pBins bins (as evenly as possible).
+	 */
+	private int forcedPairs(int pItems, int pBins) {
+		int perBin = pItems / pBins;
+		int bigger = pItems % pBins; //Bins with one extra item
+		return bigger * (perBin + 1) * perBin / 2 + (pBins - bigger) * perBin * (perBin - 1) / 2;
+	}
+
+	/**
+	 * @return the sum of the pCount smallest conflict weights (shared students, weighted by their past conflicts) among the pairs of the clique.
+	 */
+	private int smallestWeights(int[] clique, int size, int pCount) {
+		int[] weight = new int[size * (size - 1) / 2];
+		int w = 0;
+		for (int i = 0; i < size; i++) {
+			int c = clique[i];
+			for (int k = 0; k < context.neighbours[c].length; k++) {
+				int u = context.neighbours[c][k];
+				for (int j = i + 1; j < size; j++)
+					if (clique[j] == u)
+						weight[w++] = context.conflictWeight[c][k];
+			}
+		}
+		Arrays.sort(weight, 0, w);
+		int sum = 0;
+		for (int i = 0; i < pCount && i < w; i++)
+			sum += weight[i];
+		return sum;
+	}
+
+	/**
+	 * The certificate: why no schedule can do better than the bound.
+	 */
+	public String toString() {
+		Course[] course = context.getProblem().getCourseList();
+		StringBuffer sb = new StringBuffer();
+		sb.append("Lower bound " + bound + " (rooms: " + roomBound + ", students: " + studentBound + ")");
+		if (roomBound > 0)
+			sb.append("\n\t" + context.getCourseCount() + " exams for " + context.roomCells + " room cells");
+		for (int[] clique : cliques) {
+			sb.append("\n\t" + clique.length + " courses sharing students, " + context.timeCells + " time cells:");
+			for (int c : clique)
+				sb.append(" " + course[c].getCourseName());
+		}
+		return sb.toString();
+	}
+}
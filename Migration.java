@@ -0,0 +1,18 @@
+package scheduler;
+
+/**
+ * How an island of the genetic algorithm trades individuals with the other islands (see Scheduler1.migration and IslandWorker). Scheduler1
+ * calls it every MIGRATION_INTERVAL generations from its own thread.
+ */
+public interface Migration {
+
+	/**
+	 * Sends the best individual of this island and gets one from another island back.
+	 *
+	 * @param pBest the best schedule of this island, ordered like the problem's course list. It is reused by the island, so copy it if it
+	 *            has to be kept.
+	 * @param pViolations its violations
+	 * @return a schedule to take in, ordered like the course list, or null if there is nothing better elsewhere
+	 */
+	public ScheduleChoice[] exchange(ScheduleChoice[] pBest, int pViolations);
+}
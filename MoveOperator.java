@@ -0,0 +1,29 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * One kind of move in the portfolio of the HyperHeuristic. An operator only proposes a move; the HyperHeuristic makes it, scores it and
+ * takes it back if the schedule got worse, so operators never have to undo anything themselves.
+ */
+public interface MoveOperator {
+
+	/**
+	 * @return a short name for the reports
+	 */
+	public String getName();
+
+	/**
+	 * Called once per problem, before any proposal.
+	 */
+	public void prepare(EvaluationContext pContext);
+
+	/**
+	 * Writes a move as (course, room, time cell) triples into pMoves, which has room for every course. The triples are applied in order,
+	 * each one on top of the previous ones, so a course should appear at most once. Operators that can score their move by delta evaluation
+	 * (see IncrementalSchedule.scoreAfterSwap()) should do so and not propose it if it makes the schedule worse.
+	 *
+	 * @return the number of triples, 0 if there is nothing worth trying
+	 */
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r);
+}
@@ -0,0 +1,221 @@
+package scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ServiceLoader;
+
+/**
+ * The weighted soft constraints every engine adds to the MyEvaluator score. The built-in terms (BackToBackTerm, ThreePerDayTerm,
+ * LateSlotTerm, RoomSpreadTerm) and any ObjectiveTerm found by ServiceLoader are weighted by the system properties scheduler.objective.NAME,
+ * e.g. -Dscheduler.objective.back-to-back=3. The default weight is 0, which leaves the term out, so without any property the scores are
+ * exactly what they always were.
+ *
+ * The objective can also carry a ConflictHistory (-Dscheduler.objective.history=FILE): then the clashes of a student who had conflicts in
+ * past terms are multiplied by studentWeight(), so the search prefers to upset somebody else this time.
+ *
+ * All the StudentTerms are scored together: full and delta evaluations gather each student's time cells once and hand them to every term,
+ * so more terms don't mean more passes over the students. Terms are stateless and the Objective doesn't change, so it can be shared by any
+ * number of threads.
+ */
+public class Objective {
+
+	private static volatile Objective defaultObjective = null;
+
+	private final ObjectiveTerm[] terms; //the terms that are not StudentTerms
+	private final int[] weights;
+	private final StudentTerm[] studentTerms;
+	private final int[] studentWeights;
+	private final ConflictHistory history;
+
+	/**
+	 * @param pTerms the terms
+	 * @param pWeights the weight of each term. Terms with weight 0 are left out.
+	 */
+	public Objective(ObjectiveTerm[] pTerms, int[] pWeights) {
+		this(pTerms, pWeights, null);
+	}
+
+	/**
+	 * @param pTerms the terms
+	 * @param pWeights the weight of each term. Terms with weight 0 are left out.
+	 * @param pHistory the past conflicts of the students, or null to treat every student the same
+	 */
+	public Objective(ObjectiveTerm[] pTerms, int[] pWeights, ConflictHistory pHistory) {
+		history = pHistory;
+		ArrayList<ObjectiveTerm> plain = new ArrayList<ObjectiveTerm>();
+		ArrayList<StudentTerm> perStudent = new ArrayList<StudentTerm>();
+		ArrayList<Integer> plainWeights = new ArrayList<Integer>();
+		ArrayList<Integer> perStudentWeights = new ArrayList<Integer>();
+		for (int i = 0; i < pTerms.length; i++) {
+			if (pWeights[i] < 0)
+				throw new IllegalArgumentException("The weight of " + pTerms[i].getName() + " can't be negative: " + pWeights[i]);
+			if (pWeights[i] == 0)
+				continue;
+			if (pTerms[i] instanceof StudentTerm) {
+				perStudent.add((StudentTerm) pTerms[i]);
+				perStudentWeights.add(pWeights[i]);
+			} else {
+				plain.add(pTerms[i]);
+				plainWeights.add(pWeights[i]);
+			}
+		}
+		terms = plain.toArray(new ObjectiveTerm[0]);
+		weights = toArray(plainWeights);
+		studentTerms = perStudent.toArray(new StudentTerm[0]);
+		studentWeights = toArray(perStudentWeights);
+	}
+
+	private int[] toArray(ArrayList<Integer> pList) {
+		int[] array = new int[pList.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = pList.get(i);
+		return array;
+	}
+
+	/**
+	 * @return the objective of the system properties, built the first time it is asked for.
+	 */
+	public static Objective getDefault() {
+		Objective objective = defaultObjective;
+		if (objective == null) {
+			objective = fromProperties();
+			defaultObjective = objective;
+		}
+		return objective;
+	}
+
+	/**
+	 * Replaces the default objective. EvaluationContext.forProblem() rebuilds the shared context of a problem the next time it is asked for,
+	 * so every engine started after this scores the new terms. A search that is already running keeps the objective it started with.
+	 */
+	public static void setDefault(Objective pObjective) {
+		defaultObjective = pObjective;
+	}
+
+	/**
+	 * @return the built-in terms and the ServiceLoader ones, weighted by the scheduler.objective.NAME system properties, and the history in
+	 *         the file named by scheduler.objective.history if there is one.
+	 */
+	public static Objective fromProperties() {
+		ArrayList<ObjectiveTerm> all = new ArrayList<ObjectiveTerm>();
+		all.add(new BackToBackTerm());
+		all.add(new ThreePerDayTerm());
+		all.add(new LateSlotTerm());
+		all.add(new RoomSpreadTerm());
+		for (ObjectiveTerm term : ServiceLoader.load(ObjectiveTerm.class))
+			all.add(term);
+
+		int[] weight = new int[all.size()];
+		for (int i = 0; i < weight.length; i++) {
+			String property = "scheduler.objective." + all.get(i).getName();
+			String value = System.getProperty(property);
+			if (value == null)
+				continue;
+			try {
+				weight[i] = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				Trace.warn(property + " should be a whole number, not " + value + ". Leaving the term out.");
+			}
+		}
+		ConflictHistory history = null;
+		String path = System.getProperty("scheduler.objective.history");
+		if (path != null) {
+			try {
+				history = new ConflictHistory(path);
+			} catch (IOException e) {
+				Trace.warn("Running without a conflict history: " + e);
+			}
+		}
+		return new Objective(all.toArray(new ObjectiveTerm[0]), weight, history);
+	}
+
+	/**
+	 * @return the past conflicts of the students, or null if the objective doesn't have them.
+	 */
+	public ConflictHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * @return what the student's clashes are multiplied by: 1, plus the student's past conflicts if there is a history.
+	 */
+	public int studentWeight(Student pStudent) {
+		return history == null ? 1 : 1 + history.getWeight(pStudent);
+	}
+
+	/**
+	 * @return true if no term has a weight, so the soft penalty is always 0.
+	 */
+	public boolean isEmpty() {
+		return terms.length == 0 && studentTerms.length == 0;
+	}
+
+	/**
+	 * @return true if a move can change the delta of courses that share no student with the moved one (some term looks at pLoad).
+	 */
+	public boolean hasGlobalTerms() {
+		return terms.length > 0;
+	}
+
+	/**
+	 * @param pScratch at least Student.scheduleSize ints the StudentTerms are scored in, so a full evaluation allocates nothing
+	 * @return the weighted sum of the penalties of all the terms.
+	 */
+	public int penalty(EvaluationContext pContext, int[] pCell, int[] pLoad, int[] pScratch) {
+		int total = 0;
+		for (int i = 0; i < terms.length; i++)
+			total += weights[i] * terms[i].penalty(pContext, pCell, pLoad);
+		if (studentTerms.length == 0)
+			return total;
+		for (int[] courses : pContext.studentCourses) {
+			for (int j = 0; j < courses.length; j++)
+				pScratch[j] = pCell[courses[j]];
+			for (int k = 0; k < studentTerms.length; k++)
+				total += studentWeights[k] * studentTerms[k].studentPenalty(pScratch, courses.length, pContext.slots);
+		}
+		return total;
+	}
+
+	/**
+	 * Called for every move an engine looks at, so it allocates nothing: the caller owns the scratch arrays (IncrementalSchedule keeps a pair).
+	 *
+	 * @param pBefore at least Student.scheduleSize ints for a student's time cells before the move...
+	 * @param pAfter ...and as many for after it
+	 * @return how much penalty() changes if course c moves from pCell[c] to time cell pTo.
+	 */
+	public int delta(EvaluationContext pContext, int[] pCell, int[] pLoad, int c, int pTo, int[] pBefore, int[] pAfter) {
+		if (pCell[c] == pTo)
+			return 0;
+		int total = 0;
+		for (int i = 0; i < terms.length; i++)
+			total += weights[i] * terms[i].delta(pContext, pCell, pLoad, c, pTo);
+		if (studentTerms.length == 0)
+			return total;
+		for (int s : pContext.courseStudents[c]) {
+			int[] courses = pContext.studentCourses[s];
+			for (int j = 0; j < courses.length; j++) {
+				pBefore[j] = pCell[courses[j]];
+				pAfter[j] = courses[j] == c ? pTo : pBefore[j];
+			}
+			for (int k = 0; k < studentTerms.length; k++) {
+				StudentTerm term = studentTerms[k];
+				total += studentWeights[k] * (term.studentPenalty(pAfter, courses.length, pContext.slots)
+						- term.studentPenalty(pBefore, courses.length, pContext.slots));
+			}
+		}
+		return total;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer("Objective:");
+		if (isEmpty())
+			sb.append(" no soft constraints");
+		if (history != null)
+			sb.append(" history=" + history.size() + " students");
+		for (int i = 0; i < terms.length; i++)
+			sb.append(" " + terms[i].getName() + "=" + weights[i]);
+		for (int k = 0; k < studentTerms.length; k++)
+			sb.append(" " + studentTerms[k].getName() + "=" + studentWeights[k]);
+		return sb.toString();
+	}
+}
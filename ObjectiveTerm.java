@@ -0,0 +1,29 @@
+package scheduler;
+
+/**
+ * A soft constraint of the exam schedule, on top of the room clashes and the same-time student clashes MyEvaluator always counts. Terms only
+ * look at the time cells of the exams (day * slots + slot), never at the rooms, so they can be folded into the time part of every move.
+ *
+ * Implementations are found with java.util.ServiceLoader (list them in META-INF/services/scheduler.ObjectiveTerm) and weighted by the system
+ * property scheduler.objective.NAME, where NAME is getName(). See Objective.
+ */
+public interface ObjectiveTerm {
+
+	/**
+	 * @return a short name without spaces, e.g. "back-to-back". It picks the weight of the term.
+	 */
+	public String getName();
+
+	/**
+	 * @param pContext the problem
+	 * @param pCell the time cell of every course
+	 * @param pLoad the number of exams in every time cell
+	 * @return the penalty of the whole schedule. Never negative.
+	 */
+	public int penalty(EvaluationContext pContext, int[] pCell, int[] pLoad);
+
+	/**
+	 * @return how much penalty() changes if course c moves from pCell[c] to time cell pTo. pCell and pLoad are the schedule before the move.
+	 */
+	public int delta(EvaluationContext pContext, int[] pCell, int[] pLoad, int c, int pTo);
+}
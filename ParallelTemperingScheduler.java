@@ -0,0 +1,229 @@
+package scheduler;
+
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This Scheduler runs parallel tempering (replica-exchange annealing). REPLICAS Metropolis chains run at the same time, one per core, each at a
+ * fixed temperature of a geometric ladder. Every chain moves one course at a time to a random room and time cell, scored by delta evaluation on
+ * an IncrementalSchedule. Every MOVES_BETWEEN_EXCHANGES moves the chains meet and neighbouring temperatures try to swap their schedules, so good
+ * schedules found by the hot chains sink down to the cold ones.
+ */
+public class ParallelTemperingScheduler implements Scheduler {
+
+	/**
+	 * @see scheduler.Scheduler#authors()
+	 */
+	public String authors() {
+		return "Rodrigo Alves (ID: 15674112)";
+	}
+
+	/*
+	 * Constants to play with:
+	 */
+	final int HALT_AFTER_SECONDS = 12; //It will stop after that time. It returns the best solution found so far.
+	final int REPLICAS = Math.max(2, Runtime.getRuntime().availableProcessors()); //Total of chains (and threads).
+	final double MIN_TEMPERATURE = 1; //Temperature of the coldest chain.
+	final double MAX_TEMPERATURE = 30; //Temperature of the hottest chain.
+	final int MOVES_BETWEEN_EXCHANGES = 2000; //Moves every chain does before the replicas try to swap.
+
+	/*
+	 * Other variables:
+	 */
+	Replica[] replicas; //replicas[i] runs at the i-th temperature of the ladder, the coldest first.
+	long[] exchangesAttempted; //exchangesAttempted[i] counts swaps tried between replicas i and i + 1
+	long[] exchangesAccepted;
+	int exchangePhase = 0; //Alternates between swapping the (even, odd) pairs and the (odd, even) ones.
+	volatile boolean stop = false;
+	LowerBound lowerBound; //No schedule can score less than this, so stop as soon as a replica gets there.
+
+	ScheduleChoice[] bestSoFar = null; //Keeps track of the best ScheduleChoice[] found so far.
+	int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far.
+
+	/**
+	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
+	 */
+	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		final EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		lowerBound = new LowerBound(context);
+		final long deadline = System.currentTimeMillis() + HALT_AFTER_SECONDS * 1000L;
+
+		replicas = new Replica[REPLICAS];
+		exchangesAttempted = new long[REPLICAS - 1];
+		exchangesAccepted = new long[REPLICAS - 1];
+		stop = false;
+		for (int i = 0; i < REPLICAS; i++)
+			replicas[i] = new Replica(context, temperatureOf(i));
+
+		/* The last replica to reach the barrier does the exchanges for everyone: */
+		final CyclicBarrier barrier = new CyclicBarrier(REPLICAS, new Runnable() {
+			public void run() {
+				exchange();
+				for (Replica replica : replicas)
+					if (lowerBound.isOptimal(replica.bestScore))
+						stop = true;
+				if (System.currentTimeMillis() > deadline)
+					stop = true;
+			}
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(REPLICAS);
+		try {
+			Future<?>[] running = new Future<?>[REPLICAS];
+			for (int i = 0; i < REPLICAS; i++) {
+				final Replica replica = replicas[i];
+				running[i] = pool.submit(new Runnable() {
+					public void run() {
+						try {
+							while (!stop) {
+								replica.sweep(MOVES_BETWEEN_EXCHANGES);
+								barrier.await();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} catch (BrokenBarrierException e) {
+							/* Another replica failed; its Future reports why. */
+						} catch (RuntimeException e) {
+							barrier.reset(); //Don't leave the other replicas waiting for us.
+							throw e;
+						}
+					}
+				});
+			}
+			for (Future<?> f : running)
+				f.get();
+		} catch (Exception e) {
+			Trace.warn("Parallel tempering stopped early: " + e);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		/* Return the best schedule any replica has seen: */
+		IncrementalSchedule best = new IncrementalSchedule(context);
+		for (Replica replica : replicas) {
+			if (replica.bestScore < violationsForBestSoFar) {
+				violationsForBestSoFar = replica.bestScore;
+				best.copyFrom(replica.best);
+			}
+		}
+		bestSoFar = best.toChoices();
+		return bestSoFar;
+	}
+
+	/**
+	 * @return the temperature of the i-th rung of the geometric ladder (0 is the coldest).
+	 */
+	private double temperatureOf(int i) {
+		return MIN_TEMPERATURE * Math.pow(MAX_TEMPERATURE / MIN_TEMPERATURE, (double) i / (REPLICAS - 1));
+	}
+
+	/**
+	 * Tries to swap the schedules of every other pair of neighbouring temperatures. A swap is accepted with probability
+	 * min(1, exp((E_i - E_j) * (1/T_i - 1/T_j))), which keeps every chain at its own temperature's equilibrium.
+	 */
+	private void exchange() {
+		for (int i = exchangePhase; i < REPLICAS - 1; i += 2) {
+			Replica cold = replicas[i];
+			Replica hot = replicas[i + 1];
+			double exponent = (cold.current.score() - hot.current.score()) * (1.0 / cold.temperature - 1.0 / hot.temperature);
+			exchangesAttempted[i]++;
+			if (exponent >= 0 || Math.exp(exponent) > cold.r.nextDouble()) {
+				IncrementalSchedule swap = cold.current;
+				cold.current = hot.current;
+				hot.current = swap;
+				exchangesAccepted[i]++;
+			}
+		}
+		exchangePhase = 1 - exchangePhase;
+	}
+
+	/**
+	 * @return the fraction of proposed moves each replica accepted in the last run, the coldest replica first.
+	 */
+	public double[] getAcceptanceRates() {
+		double[] rate = new double[replicas.length];
+		for (int i = 0; i < replicas.length; i++)
+			rate[i] = replicas[i].proposed == 0 ? 0 : (double) replicas[i].accepted / replicas[i].proposed;
+		return rate;
+	}
+
+	/**
+	 * @return the fraction of swaps accepted between replica i and i + 1 in the last run.
+	 */
+	public double[] getExchangeRates() {
+		double[] rate = new double[exchangesAttempted.length];
+		for (int i = 0; i < rate.length; i++)
+			rate[i] = exchangesAttempted[i] == 0 ? 0 : (double) exchangesAccepted[i] / exchangesAttempted[i];
+		return rate;
+	}
+
+	/**
+	 * @return one line per replica with its temperature and acceptance rates.
+	 */
+	public String acceptanceReport() {
+		double[] moves = getAcceptanceRates();
+		double[] swaps = getExchangeRates();
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < replicas.length; i++) {
+			sb.append(String.format("T=%8.3f moves %5.1f%%", replicas[i].temperature, 100 * moves[i]));
+			if (i < swaps.length)
+				sb.append(String.format(" swaps with next %5.1f%%", 100 * swaps[i]));
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * One Metropolis chain at a fixed temperature. Only its own thread touches it, except at the barrier.
+	 */
+	private static class Replica {
+		final double temperature;
+		final Random r = new Random();
+		IncrementalSchedule current;
+		final IncrementalSchedule best;
+		int bestScore;
+		long proposed = 0;
+		long accepted = 0;
+
+		Replica(EvaluationContext context, double pTemperature) {
+			temperature = pTemperature;
+			current = new IncrementalSchedule(context);
+			current.randomize(r);
+			best = new IncrementalSchedule(context);
+			best.copyFrom(current);
+			bestScore = current.score();
+		}
+
+		/**
+		 * Proposes pMoves single-course moves and accepts them with the Metropolis rule.
+		 */
+		void sweep(int pMoves) {
+			EvaluationContext context = current.context;
+			int courses = context.getCourseCount();
+			int rooms = context.getRoomCount();
+			int score = current.score();
+			for (int m = 0; m < pMoves; m++) {
+				int c = r.nextInt(courses);
+				int newRoom = r.nextInt(rooms);
+				int newCell = context.openCells[r.nextInt(context.openCells.length)];
+				if (newRoom == current.room[c] && newCell == current.cell[c])
+					continue;
+				proposed++;
+				int newScore = current.scoreAfterMove(c, newRoom, newCell);
+				if (newScore <= score || Math.exp((score - newScore) / temperature) > r.nextDouble()) {
+					current.move(c, newRoom, newCell);
+					score = newScore;
+					accepted++;
+					if (score < bestScore) {
+						bestScore = score;
+						best.copyFrom(current);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package scheduler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The binary format of a SchedulingProblem and of its schedules, used by the SolverDaemon and its clients.
+ *
+ * A problem is a header (magic number, version, days and time slots) and the rest of its TimeGrid (the slot names and the blocked cells),
+ * followed by the course names, the rooms (name and seats) and the students, each student as its id, its name and the indexes of its courses in the
+ * course list. A schedule is a room index, a day and a time slot per course, in the order of the course list. Strings are modified UTF-8 (DataOutputStream.writeUTF()).
+ */
+public class ProblemCodec {
+
+	private static final int MAGIC = 0x45584d50; //"EXMP"
+	private static final short VERSION = 3; //2: the time grid is part of the problem. 3: room capacities
+	private static final int MAX_COUNT = 1 << 24; //Sanity limit, so a corrupt count doesn't allocate gigabytes.
+
+	private ProblemCodec() {
+	}
+
+	public static void writeProblem(DataOutputStream pOut, SchedulingProblem pProblem) throws IOException {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		Student[] student = pProblem.getStudentList();
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+
+		pOut.writeInt(MAGIC);
+		pOut.writeShort(VERSION);
+		TimeGrid grid = pProblem.getTimeGrid();
+		pOut.writeShort(grid.getDays());
+		pOut.writeShort(grid.getSlots());
+		for (int s = 0; s < grid.getSlots(); s++)
+			pOut.writeUTF(grid.getSlotName(s));
+		pOut.writeInt(grid.getCellCount() - grid.getOpenCellCount());
+		for (int t = 0; t < grid.getCellCount(); t++)
+			if (grid.isBlocked(t))
+				pOut.writeInt(t);
+		pOut.writeInt(course.length);
+		for (Course c : course)
+			pOut.writeUTF(c.getCourseName());
+		pOut.writeInt(room.length);
+		for (Room r : room) {
+			pOut.writeUTF(r.getRoomName());
+			pOut.writeInt(r.getCapacity());
+		}
+		pOut.writeInt(student.length);
+		for (int s = 0; s < student.length; s++) {
+			pOut.writeInt(student[s].getStudentId());
+			pOut.writeUTF(student[s].getStudentName());
+			int[] courses = context.studentCourses[s];
+			pOut.writeByte(courses.length);
+			for (int c : courses)
+				pOut.writeInt(c);
+		}
+	}
+
+	/**
+	 * Reads a problem written by writeProblem(). The students are enrolled in their courses, as Generator does.
+	 *
+	 * @throws IOException if the stream can't be read or doesn't hold a valid problem
+	 */
+	public static SchedulingProblem readProblem(DataInputStream pIn) throws IOException {
+		if (pIn.readInt() != MAGIC || pIn.readShort() != VERSION)
+			throw new IOException("Not a scheduling problem");
+		int days = pIn.readUnsignedShort();
+		int slots = pIn.readUnsignedShort();
+		if ((long) days * slots > MAX_COUNT)
+			throw new IOException("Can't have " + days + " days of " + slots + " slots");
+		String[] slotName = new String[slots];
+		for (int s = 0; s < slots; s++)
+			slotName[s] = pIn.readUTF();
+		int[] blocked = new int[count(pIn, "blocked cells")];
+		for (int i = 0; i < blocked.length; i++)
+			blocked[i] = pIn.readInt();
+		TimeGrid grid;
+		try {
+			grid = new TimeGrid(days, slotName, blocked);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+
+		Course[] course = new Course[count(pIn, "courses")];
+		for (int c = 0; c < course.length; c++)
+			course[c] = new Course(pIn.readUTF());
+		Room[] room = new Room[count(pIn, "rooms")];
+		for (int r = 0; r < room.length; r++) {
+			String name = pIn.readUTF();
+			int capacity = pIn.readInt();
+			if (capacity < 0)
+				throw new IOException(name + " can't have " + capacity + " seats");
+			room[r] = new Room(name, capacity);
+		}
+		Student[] student = new Student[count(pIn, "students")];
+		for (int s = 0; s < student.length; s++) {
+			int id = pIn.readInt();
+			String name = pIn.readUTF();
+			int size = pIn.readUnsignedByte();
+			if (size != Student.scheduleSize)
+				throw new IOException(name + " takes " + size + " courses, every student must take " + Student.scheduleSize);
+			Course[] schedule = new Course[size];
+			for (int j = 0; j < size; j++) {
+				int c = pIn.readInt();
+				if (c < 0 || c >= course.length)
+					throw new IOException(name + " takes course " + c + ", which is not in the course list");
+				schedule[j] = course[c];
+			}
+			student[s] = new Student(id, name, schedule);
+			for (Course c : schedule)
+				c.enroll(student[s]);
+		}
+		return new SchedulingProblem(course, room, student, grid);
+	}
+
+	private static int count(DataInputStream pIn, String pWhat) throws IOException {
+		int count = pIn.readInt();
+		if (count < 0 || count > MAX_COUNT)
+			throw new IOException("Can't have " + count + " " + pWhat);
+		return count;
+	}
+
+	/**
+	 * Writes a complete schedule of the problem. The choices may come in any order.
+	 *
+	 * @throws IllegalArgumentException if a course of the problem has no choice or a choice is for a course or room of another problem
+	 */
+	public static void writeSchedule(DataOutputStream pOut, SchedulingProblem pProblem, ScheduleChoice[] pSchedule) throws IOException {
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		ScheduleChoice[] ordered = new ScheduleChoice[context.getCourseCount()];
+		for (ScheduleChoice choice : pSchedule) {
+			int c = context.indexOf(choice.getCourse());
+			if (c < 0 || context.indexOf(choice.getRoom()) < 0)
+				throw new IllegalArgumentException(choice + " is not part of the problem");
+			ordered[c] = choice;
+		}
+		for (int c = 0; c < ordered.length; c++) {
+			if (ordered[c] == null)
+				throw new IllegalArgumentException("Incomplete Exam Schedule! " + pProblem.getCourseList()[c] + " has no exam");
+			pOut.writeShort(context.indexOf(ordered[c].getRoom()));
+			pOut.writeShort(ordered[c].getDay());
+			pOut.writeShort(ordered[c].getTimeSlot());
+		}
+	}
+
+	/**
+	 * @return a schedule written by writeSchedule(), ordered like the problem's course list
+	 * @throws IOException if the stream can't be read or a choice is out of range
+	 */
+	public static ScheduleChoice[] readSchedule(DataInputStream pIn, SchedulingProblem pProblem) throws IOException {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		ScheduleChoice[] schedule = new ScheduleChoice[course.length];
+		for (int c = 0; c < course.length; c++) {
+			int r = pIn.readUnsignedShort();
+			int day = pIn.readUnsignedShort();
+			int slot = pIn.readUnsignedShort();
+			if (r >= room.length || day >= pProblem.getExamPeriod() || slot >= pProblem.getTimeGrid().getSlots())
+				throw new IOException("Course " + course[c] + " has an impossible choice: room " + r + ", day " + day + ", slot " + slot);
+			schedule[c] = new ScheduleChoice(course[c], room[r], day, slot);
+		}
+		return schedule;
+	}
+}
@@ -0,0 +1,196 @@
+package scheduler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A canonical SHA-256 hash of a SchedulingProblem. It only depends on what a schedule depends on: the course names, the room names and
+ * seats, the time grid and which sets of courses the students take. The order of the lists, the student names and the object identities don't matter, so the
+ * same departmental instance gets the same fingerprint however it was built.
+ *
+ * It also fixes a canonical order of the courses (by name) and rooms (by name), which SolutionStore uses to save a schedule independently of
+ * the object identities of the problem it was found for.
+ */
+public class ProblemFingerprint {
+
+	private final EvaluationContext context;
+	private final Course[] courses; //the problem's courses in canonical order
+	private final Room[] rooms; //the problem's rooms in canonical order
+	private final int[] canonicalCourse; //canonicalCourse[i]: canonical position of the i-th course of the problem's course list
+	private final int[] canonicalRoom; //the same for the rooms
+	private final byte[] digest;
+
+	/**
+	 * @param pProblem the problem to hash. Course names and room names must be unique.
+	 */
+	public ProblemFingerprint(SchedulingProblem pProblem) {
+		context = EvaluationContext.forProblem(pProblem);
+
+		courses = pProblem.getCourseList().clone();
+		Arrays.sort(courses, new Comparator<Course>() {
+			public int compare(Course a, Course b) {
+				return a.getCourseName().compareTo(b.getCourseName());
+			}
+		});
+		rooms = pProblem.getRoomList().clone();
+		Arrays.sort(rooms, new Comparator<Room>() {
+			public int compare(Room a, Room b) {
+				return a.getRoomName().compareTo(b.getRoomName());
+			}
+		});
+		for (int i = 1; i < courses.length; i++)
+			if (courses[i].getCourseName().equals(courses[i - 1].getCourseName()))
+				throw new IllegalArgumentException("Two courses are called " + courses[i] + ", can't fingerprint the problem");
+		for (int i = 1; i < rooms.length; i++)
+			if (rooms[i].getRoomName().equals(rooms[i - 1].getRoomName()))
+				throw new IllegalArgumentException("Two rooms are called " + rooms[i] + ", can't fingerprint the problem");
+
+		canonicalCourse = new int[courses.length];
+		for (int i = 0; i < courses.length; i++)
+			canonicalCourse[context.indexOf(courses[i])] = i;
+		canonicalRoom = new int[rooms.length];
+		for (int i = 0; i < rooms.length; i++)
+			canonicalRoom[context.indexOf(rooms[i])] = i;
+
+		/* Every student becomes the sorted list of its canonical course positions, and the students are sorted too: */
+		int[][] enrolment = new int[context.getStudentCount()][];
+		for (int s = 0; s < enrolment.length; s++) {
+			enrolment[s] = new int[context.studentCourses[s].length];
+			for (int j = 0; j < enrolment[s].length; j++)
+				enrolment[s][j] = canonicalCourse[context.studentCourses[s][j]];
+			Arrays.sort(enrolment[s]);
+		}
+		Arrays.sort(enrolment, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				for (int j = 0; j < a.length && j < b.length; j++)
+					if (a[j] != b[j])
+						return a[j] < b[j] ? -1 : 1;
+				return a.length - b.length;
+			}
+		});
+
+		MessageDigest sha;
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform has SHA-256", e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		buffer.putInt(context.days).putInt(context.slots).putInt(courses.length).putInt(rooms.length);
+		sha.update(buffer.array());
+		if (context.openCells.length < context.timeCells) {
+			/* Only grids with blocked cells hash them, so the checkpoints of default problems keep their fingerprint: */
+			byte[] blocked = new byte[context.timeCells];
+			for (int t = 0; t < blocked.length; t++)
+				blocked[t] = (byte) (context.blocked[t] ? 1 : 0);
+			sha.update(blocked);
+		}
+		for (Course c : courses)
+			updateString(sha, c.getCourseName());
+		for (Room r : rooms)
+			updateString(sha, r.getRoomName());
+		if (context.hasCapacities) {
+			/* Same as the blocked cells: problems without seat counts keep their fingerprint. */
+			buffer = ByteBuffer.allocate(4 * rooms.length);
+			for (Room r : rooms)
+				buffer.putInt(r.getCapacity());
+			sha.update(buffer.array());
+		}
+		buffer = ByteBuffer.allocate(4 * Student.scheduleSize + 4);
+		for (int[] student : enrolment) {
+			buffer.clear();
+			buffer.putInt(student.length);
+			for (int c : student)
+				buffer.putInt(c);
+			sha.update(buffer.array(), 0, buffer.position());
+		}
+		digest = sha.digest();
+	}
+
+	private void updateString(MessageDigest sha, String pText) {
+		byte[] bytes = pText.getBytes(StandardCharsets.UTF_8);
+		sha.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		sha.update(bytes);
+	}
+
+	/**
+	 * @return the 32 bytes of the hash
+	 */
+	public byte[] getDigest() {
+		return digest.clone();
+	}
+
+	/**
+	 * @return the hash as 64 hexadecimal digits
+	 */
+	public String getKey() {
+		return toHex(digest);
+	}
+
+	static String toHex(byte[] pBytes) {
+		StringBuffer sb = new StringBuffer();
+		for (byte b : pBytes)
+			sb.append(String.format("%02x", b & 0xff));
+		return sb.toString();
+	}
+
+	public SchedulingProblem getProblem() {
+		return context.getProblem();
+	}
+
+	/**
+	 * @return the EvaluationContext built for hashing, so callers don't have to build another one.
+	 */
+	public EvaluationContext getContext() {
+		return context;
+	}
+
+	public int getCourseCount() {
+		return courses.length;
+	}
+
+	/**
+	 * Writes a schedule in canonical order: for the i-th course by name, the canonical index of its room and its time cell.
+	 *
+	 * @param pSolution a complete schedule of the problem, in any order
+	 */
+	void encode(ScheduleChoice[] pSolution, short[] pRoom, short[] pCell) {
+		for (ScheduleChoice choice : pSolution) {
+			int c = canonicalCourse[context.indexOf(choice.getCourse())];
+			pRoom[c] = (short) canonicalRoom[context.indexOf(choice.getRoom())];
+			pCell[c] = (short) (choice.getDay() * context.slots + choice.getTimeSlot());
+		}
+	}
+
+	/**
+	 * The opposite of encode().
+	 *
+	 * @return a schedule of the problem, ordered like its course list
+	 */
+	ScheduleChoice[] decode(short[] pRoom, short[] pCell) {
+		Course[] course = context.getProblem().getCourseList();
+		int slots = context.slots;
+		ScheduleChoice[] choice = new ScheduleChoice[course.length];
+		for (int i = 0; i < course.length; i++) {
+			int c = canonicalCourse[i];
+			choice[i] = new ScheduleChoice(course[i], rooms[pRoom[c]], pCell[c] / slots, pCell[c] % slots);
+		}
+		return choice;
+	}
+
+	public boolean equals(Object pOther) {
+		return pOther instanceof ProblemFingerprint && Arrays.equals(digest, ((ProblemFingerprint) pOther).digest);
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(digest);
+	}
+
+	public String toString() {
+		return getKey();
+	}
+}
@@ -0,0 +1,25 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Puts a random course in a uniformly random room and open time cell. Blind, but nearly free, so it is the one to pick when the clever moves stop
+ * finding anything.
+ */
+public class RandomRestartMove implements MoveOperator {
+
+	public String getName() {
+		return "random-restart";
+	}
+
+	public void prepare(EvaluationContext pContext) {
+	}
+
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r) {
+		EvaluationContext context = pSchedule.context;
+		pMoves[0] = r.nextInt(context.getCourseCount());
+		pMoves[1] = r.nextInt(context.getRoomCount());
+		pMoves[2] = context.openCells[r.nextInt(context.openCells.length)];
+		return 1;
+	}
+}
@@ -0,0 +1,45 @@
+package scheduler;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Linear rank selection: the population is sorted once per generation, and the chance of being picked falls linearly from the best to the worst
+ * individual. Only the order matters, so a schedule with 3 violations is preferred over one with 4 as much as 3 is over 3000. A pick is O(1),
+ * by inverting the linear distribution.
+ */
+public class RankSelection implements SelectionStrategy {
+
+	private final double pressure;
+
+	private long[] sorted = new long[0]; //(violations << 32 | index), the best first
+
+	private int size;
+
+	/**
+	 * @param pPressure expected number of picks of the best individual per generation, between 1 (uniform) and 2 (the worst is never picked).
+	 */
+	public RankSelection(double pPressure) {
+		pressure = Math.min(2, Math.max(1, pPressure));
+	}
+
+	public void prepare(int[] pFitness, int pSize, Random r) {
+		if (sorted.length != pSize)
+			sorted = new long[pSize];
+		for (int i = 0; i < pSize; i++)
+			sorted[i] = ((long) pFitness[i] << 32) | i;
+		Arrays.sort(sorted);
+		size = pSize;
+	}
+
+	public int select(Random r) {
+		double u = r.nextDouble();
+		double x;
+		if (pressure == 1)
+			x = u;
+		else
+			x = (pressure - Math.sqrt(pressure * pressure - 4 * (pressure - 1) * u)) / (2 * (pressure - 1));
+		int rank = Math.min(size - 1, (int) (x * size));
+		return (int) sorted[rank];
+	}
+}
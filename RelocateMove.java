@@ -0,0 +1,52 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Moves a random course to the room and open time cell where it scores best, ties broken at random. This is what the Genetic Algorithm's
+ * mutation always did, with delta evaluation instead of a full evaluation per try.
+ */
+public class RelocateMove implements MoveOperator {
+
+	private int[] timeDelta = new int[0]; //timeDelta[t]: change of the time penalty if the course goes to time cell t
+
+	public String getName() {
+		return "relocate";
+	}
+
+	public void prepare(EvaluationContext pContext) {
+		timeDelta = new int[pContext.timeCells];
+	}
+
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r) {
+		EvaluationContext context = pSchedule.context;
+		int c = r.nextInt(context.getCourseCount());
+		for (int t : context.openCells)
+			timeDelta[t] = pSchedule.timeDelta(c, t);
+
+		int bestRoom = pSchedule.room[c];
+		int bestCell = pSchedule.cell[c];
+		int bestValue = pSchedule.score();
+		int ties = 1;
+		for (int rm = 0; rm < context.getRoomCount(); rm++) {
+			for (int t : context.openCells) {
+				int value = context.score(pSchedule.getRoomPenalty() + pSchedule.roomDelta(c, rm, t), pSchedule.getTimePenalty() + timeDelta[t]);
+				if (value < bestValue) {
+					bestValue = value;
+					bestRoom = rm;
+					bestCell = t;
+					ties = 1;
+				} else if (value == bestValue && r.nextInt(++ties) == 0) {
+					bestRoom = rm;
+					bestCell = t;
+				}
+			}
+		}
+		if (bestRoom == pSchedule.room[c] && bestCell == pSchedule.cell[c])
+			return 0;
+		pMoves[0] = c;
+		pMoves[1] = bestRoom;
+		pMoves[2] = bestCell;
+		return 1;
+	}
+}
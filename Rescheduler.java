@@ -0,0 +1,106 @@
+package scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Re-schedules a problem after enrolment changes without starting over. The old schedule is kept as it is, new courses go to the free room
+ * cell where they hurt least, and a short tabu search repairs the conflicts the changes brought in. The repair can be told to move at most a
+ * given number of exams, so the timetable stays the same for most students who have already seen it.
+ *
+ * Keep one Rescheduler for the whole add/drop period: it remembers the EvaluationContext of the last problem, and every delta only rebuilds
+ * the parts of it that changed.
+ */
+public class Rescheduler {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int REPAIR_MILLISECONDS = 200; //The repair never runs longer than this...
+	final int STALL_ITERATIONS = 500; //...and stops once this many moves in a row found nothing better.
+
+	private EvaluationContext context;
+
+	int maxMovedExams = Integer.MAX_VALUE; //Exams of the old schedule the repair may put in another room or time.
+	int movedExams = 0; //Exams of the old schedule that were moved in the last run.
+
+	/**
+	 * @param pProblem the problem the first old schedule belongs to
+	 */
+	public Rescheduler(SchedulingProblem pProblem) {
+		context = EvaluationContext.forProblem(pProblem);
+	}
+
+	/**
+	 * @return the problem with every delta given so far applied.
+	 */
+	public SchedulingProblem getProblem() {
+		return context.getProblem();
+	}
+
+	/**
+	 * @param pMax at most this many exams of the old schedule may move (Integer.MAX_VALUE for no limit)
+	 */
+	public void setMaxMovedExams(int pMax) {
+		if (pMax < 0)
+			throw new IllegalArgumentException("The number of exams that may move can't be negative: " + pMax);
+		maxMovedExams = pMax;
+	}
+
+	/**
+	 * Applies the changes to the current problem and fixes the old schedule for it.
+	 *
+	 * @param pPrevious the schedule of the current problem
+	 * @param pDelta the enrolment changes
+	 * @return a schedule of the changed problem (see getProblem()), ordered like its course list
+	 */
+	public ScheduleChoice[] reschedule(ScheduleChoice[] pPrevious, EnrolmentDelta pDelta) {
+		context = pDelta.applyTo(context);
+
+		IncrementalSchedule current = new IncrementalSchedule(context);
+		current.load(pPrevious);
+		int[] home = new int[context.getCourseCount()];
+		Arrays.fill(home, -1);
+		boolean[] taken = new boolean[context.roomCells];
+		for (ScheduleChoice choice : pPrevious) {
+			int c = context.indexOf(choice.getCourse());
+			if (c < 0)
+				continue; //The course was removed.
+			home[c] = current.room[c] * context.timeCells + current.cell[c];
+			taken[home[c]] = true;
+		}
+
+		/* New courses go to the free room cell that adds the fewest violations: */
+		for (int c = 0; c < home.length; c++) {
+			if (home[c] >= 0)
+				continue;
+			int bestRoomCell = 0;
+			int bestScore = Integer.MAX_VALUE;
+			for (int rc = 0; rc < context.roomCells; rc++) {
+				if ((taken[rc] && !current.fits(c, rc / context.timeCells, rc % context.timeCells)) || context.blocked[rc % context.timeCells])
+					continue; //Taken, unless it is a room with enough seats left.
+				int score = current.scoreAfterMove(c, rc / context.timeCells, rc % context.timeCells);
+				if (score < bestScore) {
+					bestScore = score;
+					bestRoomCell = rc;
+				}
+			}
+			taken[bestRoomCell] = true;
+			current.move(c, bestRoomCell / context.timeCells, bestRoomCell % context.timeCells);
+		}
+
+		TabuSearchScheduler repair = new TabuSearchScheduler();
+		repair.home = home;
+		repair.moveLimit = maxMovedExams;
+		repair.stallLimit = STALL_ITERATIONS;
+		ScheduleChoice[] result = repair.search(current, System.currentTimeMillis() + REPAIR_MILLISECONDS);
+
+		movedExams = 0;
+		for (ScheduleChoice choice : result) {
+			int c = context.indexOf(choice.getCourse());
+			int rc = context.indexOf(choice.getRoom()) * context.timeCells + choice.getDay() * context.slots + choice.getTimeSlot();
+			if (home[c] >= 0 && home[c] != rc)
+				movedExams++;
+		}
+		return result;
+	}
+}
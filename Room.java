@@ -10,6 +10,8 @@ public class Room {
 
 	private String roomName;
 
+	private int capacity;
+
 	/**
 	 * The building prefixes, using UBC's SIS code system. You take class in DMP, for instance.
 	 */
@@ -26,14 +28,39 @@ public class Room {
 	}
 
 	/**
-	 * Constructs a Room object.
+	 * Returns the number of seats of the room
+	 * 
+	 * @return capacity, or 0 if the room has no seat count and takes a single exam at a time, whatever its size
+	 */
+	public int getCapacity() {
+
+		return capacity;
+	}
+
+	/**
+	 * Constructs a Room object that takes a single exam at a time, whatever its size.
 	 * 
 	 * @param pName the name of the room (e.g. DMP 101)
 	 */
 
 	public Room(String pName) {
 
+		this(pName, 0);
+	}
+
+	/**
+	 * Constructs a Room object with a seat count. Any number of exams can share the room at the same time, as long as their students fit.
+	 * 
+	 * @param pName the name of the room (e.g. DMP 101)
+	 * @param pCapacity the number of seats (0: a single exam at a time, like Room(pName))
+	 * @throws IllegalArgumentException if pCapacity is negative
+	 */
+	public Room(String pName, int pCapacity) {
+
+		if (pCapacity < 0)
+			throw new IllegalArgumentException(pName + " can't have " + pCapacity + " seats");
 		roomName = pName;
+		capacity = pCapacity;
 	}
 
 	public String toString() {
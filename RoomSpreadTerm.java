@@ -0,0 +1,25 @@
+package scheduler;
+
+/**
+ * Soft constraint: spread the exams over the time cells, so fewer rooms (and invigilators) are busy at the same time. Every pair of exams in
+ * the same time cell costs 1, whatever their rooms.
+ */
+public class RoomSpreadTerm implements ObjectiveTerm {
+
+	public String getName() {
+		return "room-spread";
+	}
+
+	public int penalty(EvaluationContext pContext, int[] pCell, int[] pLoad) {
+		int total = 0;
+		for (int exams : pLoad)
+			total += exams * (exams - 1) / 2;
+		return total;
+	}
+
+	public int delta(EvaluationContext pContext, int[] pCell, int[] pLoad, int c, int pTo) {
+		if (pCell[c] == pTo)
+			return 0;
+		return pLoad[pTo] - (pLoad[pCell[c]] - 1); //Pairs with the exams at pTo, minus the pairs it leaves behind.
+	}
+}
@@ -42,7 +42,8 @@ public class ScheduleChoice {
 	 * 
 	 */
 	public void setTime(int pDay, int pTime) {
-		System.out.println("Changing (" + day + ", " + timeSlot + ") to (" + pDay + ", " + pTime + ")");
+		if (Trace.isOn(Trace.DEBUG))
+			Trace.log(Trace.DEBUG, "Changing (" + day + ", " + timeSlot + ") to (" + pDay + ", " + pTime + ")");
 		day = pDay;
 		timeSlot = pTime;
 	}
@@ -53,7 +54,7 @@ public class ScheduleChoice {
 	 * @param pCor the course to be scheduled
 	 * @param pRm the room the exam will be in
 	 * @param pDy the day of the exam
-	 * @param pTm the time slot. 0 is 8:30, 1 is 12:00, 2 is 3:30, 3 is 7:00
+	 * @param pTm the time slot. 0 is 8:30, 1 is 12:00, 2 is 3:30, 3 is 7:00 (grids with more slots a day go on from there, see TimeGrid)
 	 * 
 	 */
 	public ScheduleChoice(Course pCor, Room pRm, int pDy, int pTm) {
@@ -61,9 +62,10 @@ public class ScheduleChoice {
 		room = pRm;
 		day = pDy;
 
-		if (pTm < 0 || pTm >= times.length) {
+		if (pTm < 0) {
 			timeSlot = 0;
-			System.err.println(course.getCourseName() + " is at an impossible time, " + pTm + ", defaulting to 8:30 exam");
+			if (Trace.isOn(Trace.WARN))
+				Trace.log(Trace.WARN, course.getCourseName() + " is at an impossible time, " + pTm + ", defaulting to the first slot");
 		} else {
 			timeSlot = pTm;
 		}
@@ -76,7 +78,14 @@ public class ScheduleChoice {
 		timeSlot = s.getTimeSlot();
 	}
 
+	/**
+	 * @return the start time of a slot, or "slot n" for a slot past the ones in times
+	 */
+	public static String slotName(int pSlot) {
+		return pSlot < times.length ? times[pSlot] : "slot " + pSlot;
+	}
+
 	public String toString() {
-		return course.getCourseName() + " in " + room.getRoomName() + " on the " + day + " at " + times[timeSlot];
+		return course.getCourseName() + " in " + room.getRoomName() + " on the " + day + " at " + slotName(timeSlot);
 	}
 }
@@ -0,0 +1,460 @@
+package scheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes solved schedules and the students' timetables as CSV, JSON or iCalendar, straight into FileChannels. Nothing is built as a String
+ * first: names are encoded to UTF-8 and numbers to digits right into a pooled ByteBuffer, which is written out whenever it fills up, so the
+ * memory an export takes doesn't depend on the size of the problem.
+ *
+ * The timetables are sharded: student s goes to shard s % shards, and the shards are written in parallel, each to a file of its own.
+ *
+ * The exam days are consecutive calendar days from the first day given (iCalendar only), and every exam lasts EXAM_MINUTES.
+ */
+public class ScheduleExporter {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int BUFFER_BYTES = 1 << 16; //Size of the pooled buffers. The channel is written once per buffer.
+	final int THREADS = Runtime.getRuntime().availableProcessors(); //Shards written at the same time.
+	final int EXAM_MINUTES = 180; //Length of an exam in the iCalendar files.
+
+	/* Formats: */
+	public static final int CSV = 0;
+	public static final int JSON = 1;
+	public static final int ICS = 2;
+
+	private static final String[] EXTENSION = { ".csv", ".json", ".ics" };
+	private static final int ICS_LINE_OCTETS = 75; //Longest iCalendar line (RFC 5545), without its CRLF. Longer ones are folded.
+
+	private final ArrayBlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<ByteBuffer>(THREADS);
+	private final LocalDate firstDay;
+	private final LocalDateTime stamp = LocalDateTime.now(ZoneOffset.UTC); //DTSTAMP of every event of this exporter, in UTC as RFC 5545 wants
+
+	/**
+	 * @param pFirstDay the date of day 0 of the exam period, for the iCalendar files
+	 */
+	public ScheduleExporter(LocalDate pFirstDay) {
+		firstDay = pFirstDay;
+	}
+
+	/**
+	 * @return the extension of the files of a format, with its dot
+	 */
+	public static String extension(int pFormat) {
+		return EXTENSION[pFormat];
+	}
+
+	/**
+	 * Writes the schedule, one exam per course in the order of the course list.
+	 *
+	 * @param pFormat CSV, JSON or ICS
+	 * @throws IllegalArgumentException if a course has no exam
+	 */
+	public void writeSchedule(Path pFile, int pFormat, SchedulingProblem pProblem, ScheduleChoice[] pSchedule) throws IOException {
+		ScheduleChoice[] ordered = order(pProblem, pSchedule);
+		Output out = open(pFile);
+		try {
+			begin(out, pFormat, false);
+			for (int c = 0; c < ordered.length; c++) {
+				if (pFormat == CSV)
+					csvExam(out, pProblem.getTimeGrid(), ordered[c]);
+				else if (pFormat == JSON)
+					jsonExam(out, pProblem.getTimeGrid(), ordered[c], c == 0);
+				else
+					icsExam(out, pProblem.getTimeGrid(), ordered[c], c, null);
+			}
+			end(out, pFormat);
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Writes every student's exams into pShards files named pPrefix + shard + the extension of the format, in parallel.
+	 *
+	 * @param pFormat CSV, JSON or ICS
+	 * @return the files written
+	 * @throws IllegalArgumentException if a course has no exam
+	 */
+	public Path[] writeTimetables(Path pDirectory, String pPrefix, int pShards, final int pFormat, SchedulingProblem pProblem,
+			ScheduleChoice[] pSchedule) throws IOException {
+		if (pShards < 1)
+			throw new IllegalArgumentException("At least one shard is needed, not " + pShards);
+		final EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		final ScheduleChoice[] ordered = order(pProblem, pSchedule);
+		final Student[] student = pProblem.getStudentList();
+		final TimeGrid grid = pProblem.getTimeGrid();
+		final int shards = pShards;
+		final Path[] file = new Path[shards];
+		for (int k = 0; k < shards; k++)
+			file[k] = pDirectory.resolve(pPrefix + k + EXTENSION[pFormat]);
+
+		ExecutorService threads = Executors.newFixedThreadPool(Math.min(THREADS, shards));
+		try {
+			ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+			for (int k = 0; k < shards; k++) {
+				final int shard = k;
+				running.add(threads.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						Output out = open(file[shard]);
+						try {
+							begin(out, pFormat, true);
+							for (int s = shard; s < student.length; s += shards)
+								timetable(out, pFormat, grid, student[s], context.studentCourses[s], ordered, s == shard);
+							end(out, pFormat);
+						} finally {
+							close(out);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : running)
+				f.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Timetable export failed", e.getCause());
+		} catch (InterruptedException e) {
+			throw new IOException("Timetable export interrupted", e);
+		} finally {
+			threads.shutdownNow();
+		}
+		return file;
+	}
+
+	/**
+	 * @return the schedule in the order of the course list
+	 */
+	private static ScheduleChoice[] order(SchedulingProblem pProblem, ScheduleChoice[] pSchedule) {
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		ScheduleChoice[] ordered = new ScheduleChoice[context.getCourseCount()];
+		for (ScheduleChoice choice : pSchedule) {
+			int c = context.indexOf(choice.getCourse());
+			if (c < 0)
+				throw new IllegalArgumentException(choice.getCourse() + " is not a course of the problem");
+			ordered[c] = choice;
+		}
+		for (int c = 0; c < ordered.length; c++)
+			if (ordered[c] == null)
+				throw new IllegalArgumentException("Incomplete Exam Schedule! " + pProblem.getCourseList()[c] + " has no exam");
+		return ordered;
+	}
+
+	private void begin(Output out, int pFormat, boolean pTimetables) throws IOException {
+		if (pFormat == CSV) {
+			out.put(pTimetables ? "student_id,student,course,room,day,time\n" : "course,room,day,time\n");
+		} else if (pFormat == JSON) {
+			out.put(pTimetables ? "{\"students\":[" : "{\"exams\":[");
+		} else {
+			out.foldAt = ICS_LINE_OCTETS;
+			out.put("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:-//scheduler//exam schedule//EN\r\n");
+		}
+	}
+
+	private void end(Output out, int pFormat) throws IOException {
+		if (pFormat == JSON)
+			out.put("\n]}\n");
+		else if (pFormat == ICS)
+			out.put("END:VCALENDAR\r\n");
+	}
+
+	/**
+	 * Writes the exams of one student.
+	 */
+	private void timetable(Output out, int pFormat, TimeGrid pGrid, Student pStudent, int[] pCourses, ScheduleChoice[] pOrdered, boolean pFirst)
+			throws IOException {
+		if (pFormat == CSV) {
+			for (int c : pCourses) {
+				out.putInt(pStudent.getStudentId()).put(',');
+				out.putCsv(pStudent.getStudentName()).put(',');
+				csvExam(out, pGrid, pOrdered[c]);
+			}
+		} else if (pFormat == JSON) {
+			out.put(pFirst ? "\n{\"id\":" : ",\n{\"id\":").putInt(pStudent.getStudentId()).put(",\"name\":").putJson(pStudent.getStudentName());
+			out.put(",\"exams\":[");
+			for (int j = 0; j < pCourses.length; j++)
+				jsonExam(out, pGrid, pOrdered[pCourses[j]], j == 0);
+			out.put("]}");
+		} else {
+			for (int c : pCourses)
+				icsExam(out, pGrid, pOrdered[c], c, pStudent);
+		}
+	}
+
+	private void csvExam(Output out, TimeGrid pGrid, ScheduleChoice pExam) throws IOException {
+		out.putCsv(pExam.getCourse().getCourseName()).put(',');
+		out.putCsv(pExam.getRoom().getRoomName()).put(',');
+		out.putInt(pExam.getDay()).put(',');
+		out.putCsv(pGrid.getSlotName(pExam.getTimeSlot())).put('\n');
+	}
+
+	private void jsonExam(Output out, TimeGrid pGrid, ScheduleChoice pExam, boolean pFirst) throws IOException {
+		out.put(pFirst ? "{\"course\":" : ",{\"course\":").putJson(pExam.getCourse().getCourseName());
+		out.put(",\"room\":").putJson(pExam.getRoom().getRoomName());
+		out.put(",\"day\":").putInt(pExam.getDay());
+		out.put(",\"time\":").putJson(pGrid.getSlotName(pExam.getTimeSlot())).put("}");
+	}
+
+	/**
+	 * Writes one VEVENT. The UID is the course index, plus the student id in a timetable, so re-importing a newer export updates the events.
+	 */
+	private void icsExam(Output out, TimeGrid pGrid, ScheduleChoice pExam, int pCourse, Student pStudent) throws IOException {
+		out.put("BEGIN:VEVENT\r\nUID:exam-").putInt(pCourse);
+		if (pStudent != null)
+			out.put('-').putInt(pStudent.getStudentId());
+		out.put("@scheduler\r\nDTSTAMP:");
+		out.putDateTime(stamp.toLocalDate(), stamp.getHour() * 60 + stamp.getMinute()).put('Z');
+		LocalDate date = firstDay.plusDays(pExam.getDay());
+		int start = startMinutes(pGrid, pExam.getTimeSlot());
+		out.put("\r\nDTSTART:").putDateTime(date, start);
+		out.put("\r\nDTEND:").putDateTime(date, start + EXAM_MINUTES);
+		out.put("\r\nSUMMARY:").putIcs(pExam.getCourse().getCourseName());
+		out.put("\r\nLOCATION:").putIcs(pExam.getRoom().getRoomName());
+		if (pStudent != null)
+			out.put("\r\nDESCRIPTION:").putIcs(pStudent.getStudentName());
+		out.put("\r\nEND:VEVENT\r\n");
+	}
+
+	/**
+	 * @return minutes after midnight at which a time slot starts. Slot names like ScheduleChoice.times have no am/pm: the times before 8 are
+	 *         in the afternoon. A slot not named after a time starts EXAM_MINUTES after the one before it, the first one at 8:30.
+	 */
+	private int startMinutes(TimeGrid pGrid, int pSlot) {
+		String time = pGrid.getSlotName(pSlot);
+		int colon = time.indexOf(':');
+		try {
+			int hour = Integer.parseInt(time.substring(0, colon));
+			if (hour < 8)
+				hour += 12;
+			return hour * 60 + Integer.parseInt(time.substring(colon + 1));
+		} catch (RuntimeException e) {
+			return pSlot == 0 ? 8 * 60 + 30 : startMinutes(pGrid, pSlot - 1) + EXAM_MINUTES;
+		}
+	}
+
+	private Output open(Path pFile) throws IOException {
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null)
+			buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		buffer.clear();
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(pFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			pool.offer(buffer);
+			throw e;
+		}
+		return new Output(channel, buffer);
+	}
+
+	/**
+	 * Writes what is left in the buffer, closes the file and gives the buffer back to the pool.
+	 */
+	private void close(Output out) throws IOException {
+		try {
+			out.flush();
+		} finally {
+			out.channel.close();
+			pool.offer(out.buffer);
+		}
+	}
+
+	/**
+	 * A FileChannel and the buffer in front of it. The put methods encode straight into the buffer. If foldAt is set, a line that would get
+	 * longer than foldAt octets goes on in a new line that starts with a space (iCalendar folding). A UTF-8 sequence or a number is never cut.
+	 */
+	private static class Output {
+
+		final FileChannel channel;
+		final ByteBuffer buffer;
+		int foldAt = 0; //0: lines are never folded
+		private int line = 0; //octets written since the last line break
+
+		Output(FileChannel pChannel, ByteBuffer pBuffer) {
+			channel = pChannel;
+			buffer = pBuffer;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		/**
+		 * Makes room in the buffer for pOctets more octets of the current line, folding the line first if they wouldn't fit in it.
+		 */
+		private void reserve(int pOctets) throws IOException {
+			if (buffer.remaining() < pOctets + 3)
+				flush();
+			if (foldAt > 0 && line + pOctets > foldAt) {
+				buffer.put((byte) '\r').put((byte) '\n').put((byte) ' ');
+				line = 1;
+			}
+			line += pOctets;
+		}
+
+		Output put(char ch) throws IOException {
+			return putCodePoint(ch);
+		}
+
+		/**
+		 * Encodes one Unicode code point. A surrogate that isn't part of a pair becomes '?', as String.getBytes() does.
+		 */
+		Output putCodePoint(int cp) throws IOException {
+			if (cp == '\r' || cp == '\n') {
+				if (!buffer.hasRemaining())
+					flush();
+				buffer.put((byte) cp);
+				if (cp == '\n')
+					line = 0;
+				return this;
+			}
+			if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)
+				cp = '?';
+			if (cp < 0x80) {
+				reserve(1);
+				buffer.put((byte) cp);
+				return this;
+			}
+			if (cp < 0x800) {
+				reserve(2);
+				buffer.put((byte) (0xc0 | cp >> 6));
+			} else if (cp < 0x10000) {
+				reserve(3);
+				buffer.put((byte) (0xe0 | cp >> 12));
+				buffer.put((byte) (0x80 | (cp >> 6 & 0x3f)));
+			} else {
+				reserve(4);
+				buffer.put((byte) (0xf0 | cp >> 18));
+				buffer.put((byte) (0x80 | (cp >> 12 & 0x3f)));
+				buffer.put((byte) (0x80 | (cp >> 6 & 0x3f)));
+			}
+			buffer.put((byte) (0x80 | (cp & 0x3f)));
+			return this;
+		}
+
+		/**
+		 * Encodes the code points one by one: a surrogate pair becomes one 4-byte sequence.
+		 */
+		Output put(String s) throws IOException {
+			for (int i = 0; i < s.length(); ) {
+				int cp = s.codePointAt(i);
+				putCodePoint(cp);
+				i += Character.charCount(cp);
+			}
+			return this;
+		}
+
+		Output putInt(int n) throws IOException {
+			if (n < 0) {
+				put('-');
+				if (n == Integer.MIN_VALUE)
+					return put("2147483648");
+				n = -n;
+			}
+			int digits = 1;
+			for (int p = n; p >= 10; p /= 10)
+				digits++;
+			reserve(digits);
+			int end = buffer.position() + digits;
+			for (int i = end - 1; i >= buffer.position(); i--) {
+				buffer.put(i, (byte) ('0' + n % 10));
+				n /= 10;
+			}
+			buffer.position(end);
+			return this;
+		}
+
+		private Output putTwoDigits(int n) throws IOException {
+			return put((char) ('0' + n / 10)).put((char) ('0' + n % 10));
+		}
+
+		/**
+		 * Writes a floating iCalendar date-time, e.g. 20260105T083000 (a 'Z' after it makes it UTC).
+		 */
+		Output putDateTime(LocalDate pDate, int pMinutes) throws IOException {
+			pDate = pDate.plusDays(pMinutes / (24 * 60)); //Late slots of a long grid go past midnight.
+			pMinutes %= 24 * 60;
+			putInt(pDate.getYear());
+			putTwoDigits(pDate.getMonthValue()).putTwoDigits(pDate.getDayOfMonth()).put('T');
+			return putTwoDigits(pMinutes / 60).putTwoDigits(pMinutes % 60).put("00");
+		}
+
+		/**
+		 * Writes a CSV field, quoted if it has a comma, a quote or a line break.
+		 */
+		Output putCsv(String s) throws IOException {
+			boolean quote = false;
+			for (int i = 0; i < s.length() && !quote; i++) {
+				char ch = s.charAt(i);
+				quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+			}
+			if (!quote)
+				return put(s);
+			put('"');
+			for (int i = 0; i < s.length(); ) {
+				int cp = s.codePointAt(i);
+				if (cp == '"')
+					put('"');
+				putCodePoint(cp);
+				i += Character.charCount(cp);
+			}
+			return put('"');
+		}
+
+		/**
+		 * Writes a JSON string, with its quotes.
+		 */
+		Output putJson(String s) throws IOException {
+			put('"');
+			for (int i = 0; i < s.length(); ) {
+				int cp = s.codePointAt(i);
+				if (cp == '"' || cp == '\\') {
+					put('\\').putCodePoint(cp);
+				} else if (cp < 0x20) {
+					put("\\u00").put(Character.forDigit(cp >> 4, 16)).put(Character.forDigit(cp & 0xf, 16));
+				} else {
+					putCodePoint(cp);
+				}
+				i += Character.charCount(cp);
+			}
+			return put('"');
+		}
+
+		/**
+		 * Writes an iCalendar TEXT value (backslashes, commas, semicolons and line breaks escaped).
+		 */
+		Output putIcs(String s) throws IOException {
+			for (int i = 0; i < s.length(); ) {
+				int cp = s.codePointAt(i);
+				if (cp == '\\' || cp == ',' || cp == ';')
+					put('\\').putCodePoint(cp);
+				else if (cp == '\n')
+					put("\\n");
+				else if (cp != '\r')
+					putCodePoint(cp);
+				i += Character.charCount(cp);
+			}
+			return this;
+		}
+	}
+}
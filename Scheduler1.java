@@ -1,5 +1,9 @@
 package scheduler;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -42,89 +46,219 @@ public class Scheduler1 implements Scheduler {
 	final int MAX_LOOPS = 100000; //Total of loops for the main loop. If it gets over that, returns the best solution so far.
 	final int CHILDREN_PER_COUPLE = 1 * 2; //Total of children a reproduction is going to make. This number has to be even;
 	final int POPULATION_SIZE = 3 * CHILDREN_PER_COUPLE; //The population. It has to be a multiple of CHILDREN_PER_COUPLE
-	final double COOLING_SCHEDULE = 1; //The cooling schedule for the temperature
-	final double STARTING_TEMPERATURE = 10;
+	final int TOURNAMENT_SIZE = 3; //Individuals competing for each parent slot.
+	final boolean REPAIR_CHILDREN = true; //Move courses that clash in a room to free cells right after the crossover.
 	final int TABU_LIST_MAX_LENGTH = 1; //Total of schedules to keep track
 	final int LOCAL_SEARCH_MAX = 50000; // Max. number of comparisons when choosing the most optimal ScheduleChoice.
-	final int MUTATION_LEVEL = 2; //Total of ScheduleChoice that will be replaced in every mutation.
-	final int REPETITIONS_TO_BE_CONSIDERED_STUCKED = 300; //If the last loops had exactly the same best value, reset search.
+	final int MUTATION_LEVEL = 2; //Total of ScheduleChoice that will be replaced in every mutation (if ADAPTIVE_MUTATION is false).
+	final boolean ADAPTIVE_MUTATION = true; //Mutate with the moves of a HyperHeuristic instead of always relocating MUTATION_LEVEL courses.
+	final int MUTATION_MOVES = 12; //Moves the HyperHeuristic tries in every mutation.
+	final boolean MEMETIC = true; //Every child gets a cheap random mutation, and only the best children get a local search (finished by the HyperHeuristic if ADAPTIVE_MUTATION).
+	final int MEMETIC_ELITE = 1; //How many of the best children of a generation may get the local search.
+	final double LOCAL_SEARCH_PROBABILITY = 1.0; //Chance that one of those children really gets it.
+	final int LOCAL_SEARCH_DEPTH = 500; //Most moves a local search makes.
+	final long LOCAL_SEARCH_NANOS = 50000000; //Time budget of a local search.
+	final int REPETITIONS_TO_BE_CONSIDERED_STUCKED = 300; //If the last loops had exactly the same best value, restart part of the search.
+	final double MIN_DIVERSITY = 0.02; //If the individuals differ in fewer courses than this (on average), restart part of the search.
+	final double CONVERGED_DISTANCE = 0.05; //A restart re-seeds the individuals that differ from the best in fewer courses than this.
+	final double CLONE_PERTURBATION = 0.1; //Fraction of the courses of a clone that are put in random places, so it isn't a clone anymore.
+	final int ELITE_SIZE = 1; //Best individuals carried over unchanged to the next generation (and kept when the search is reset).
+	final boolean STEADY_STATE = false; //If true, every child replaces the worst individual instead of building a whole new generation.
+	final int CHECKPOINT_SECONDS = 60; //How often the state of the search is saved, if there is a checkpoint file.
+	final int MIGRATION_INTERVAL = 20; //Generations between two exchanges with the other islands, if there is a migration.
 	
 	/*
 	 * Other variables:
 	 */
-	final int TIME_SLOTS = 4; //Total of time slots for the exams. This must be equal ScheduleChoice.times.length;
 	ScheduleChoice[][] tabuList; //Stores the tabu list
 	int tabuListLocation = 0; //The tabu list is a circular list, so stores the current index of the circular list.
 
 	ScheduleChoice[] bestSoFar = null; //Keeps track of the best ScheduleChoice[] found so far.
-	int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far.
+	volatile int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far (volatile, so a SolverDaemon can report it).
+	volatile long stopAt = Long.MAX_VALUE; //If set, System.currentTimeMillis() at which to stop, instead of after HALT_AFTER_SECONDS.
+	boolean yieldEveryLoop = false; //Give the thread up after every loop, so many solves sharing a few threads take turns (see BatchSolver).
+	
+	/*
+	 * Buffers reused by every generation, so the main loop doesn't allocate:
+	 */
+	Random r = new Random();
+	int[] fitness; //fitness[i] is the number of violations of choice[i] in the current generation.
+	int[] nextFitness; //Same, for the generation being built.
+	boolean[] improved; //improved[i]: child i of the generation being built already got its local search (see improveBestChildren()).
+	ScheduleChoice[] offspring; //Spare individual for the steady-state mode. Swapped with the individual it replaces.
+	ScheduleChoice[][] choiceTable; //choiceTable[course][room cell] is created once and shared, instead of a new ScheduleChoice per try.
+	
+	/*
+	 * How parents are chosen. Also available: new RankSelection(1.7), new StochasticUniversalSampling().
+	 */
+	SelectionStrategy selection = new TournamentSelection(TOURNAMENT_SIZE);
+	
+	/*
+	 * How children are made. Also available: new SlotBlockCrossover(), new ComponentCrossover().
+	 */
+	CrossoverOperator crossoverOperator = new UniformCrossover();
+	
+	/*
+	 * Which moves mutate the children. It learns which of them pay off on the problem being solved.
+	 */
+	HyperHeuristic hyperHeuristic = new HyperHeuristic();
+	IncrementalSchedule mutant; //The child being mutated, as plain int arrays so the moves can be scored by delta evaluation.
+	int[] timeDelta; //timeDelta[t]: change of the time penalty if the course being looked at by the local search goes to time cell t.
+	long localSearches = 0; //Local searches made in the last run...
+	long localSearchGain = 0; //...and the total they took off the children's violations.
+	
+	EvaluationContext context; //Tables about the problem being solved.
+	LowerBound lowerBound; //No schedule can score less than this, so stop as soon as we get there.
+	DiversityMonitor diversity; //How alike the individuals are, and which ones are clones.
+	Migration migration = null; //If set, this population is an island that trades individuals with others (see IslandWorker).
+	double lastDiversity = 1; //The diversity of the last generation.
+	int[] roomCellStamp; //roomCellStamp[room cell] == repairStamp if the cell is taken in the child being repaired.
+	int[] roomCellSeats; //Students in a taken room cell, for the rooms with seats.
+	int[] clashing; //Courses waiting to be moved by the repair.
+	int repairStamp = 0;
 	
 	/* Declare variables that will keep track if the algorithm is stucked: */
 	int lastLoopConstraints = 0;
 	int totalLoopsWithSameConstraints = 0;
+	
+	/*
+	 * Checkpoints, so a long run survives a restart of the JVM:
+	 */
+	String checkpointPath = null; //Where to save the state of the search (null: don't).
+	int firstLoop = 0; //The main loop starts here (not 0 when resuming).
+	long elapsedBefore = 0; //Milliseconds the run had already taken before it was resumed.
+
+	/**
+	 * @param pPath the file the state of the search is saved to every CHECKPOINT_SECONDS (null: no checkpoints)
+	 */
+	public void setCheckpointFile(String pPath) {
+		checkpointPath = pPath;
+	}
 
 	/**
 	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
 	 */
 	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		firstLoop = 0;
+		elapsedBefore = 0;
+		lastLoopConstraints = 0;
+		totalLoopsWithSameConstraints = 0;
+		tabuListLocation = 0;
+		return run(pProblem, null, null);
+	}
+
+	/**
+	 * Continues a run from a checkpoint saved by schedule() or resume(), possibly in another JVM. The problem must be the same (it may be a
+	 * new copy of it), and so must POPULATION_SIZE and TABU_LIST_MAX_LENGTH. The run keeps saving checkpoints to the same file.
+	 *
+	 * @param pProblem the problem of the checkpoint
+	 * @param pCheckpointPath the checkpoint file
+	 * @return the best schedule found, before and after the restart
+	 * @throws IOException if the checkpoint can't be read or belongs to something else
+	 * @throws IllegalArgumentException if the checkpoint is corrupt or was saved with other constants
+	 */
+	public ScheduleChoice[] resume(SchedulingProblem pProblem, String pCheckpointPath) throws IOException {
+		checkpointPath = pCheckpointPath;
+		ProblemFingerprint fingerprint = new ProblemFingerprint(pProblem);
+		return run(pProblem, Checkpoint.read(pCheckpointPath, Checkpoint.GENETIC_ALGORITHM, fingerprint), fingerprint);
+	}
+
+	/**
+	 * The Genetic Algorithm itself. Starts from random individuals, or from pState if it is not null.
+	 */
+	private ScheduleChoice[] run(SchedulingProblem pProblem, ByteBuffer pState, ProblemFingerprint fingerprint) {
 		
 		 /* Declare and prepare variables: */
 		Course[] course = pProblem.getCourseList();
 		ScheduleChoice[][] choice = new ScheduleChoice[ POPULATION_SIZE ][ course.length ];
 		ScheduleChoice[][] tempChoices = new ScheduleChoice[ POPULATION_SIZE ][ course.length ];
 		tabuList = new ScheduleChoice[TABU_LIST_MAX_LENGTH][ course.length ];
-		
-		/* Keep track of time: */
-		long time = System.currentTimeMillis();
-		
-		/* Initialize the temperature: */
-		double temperature = STARTING_TEMPERATURE;
+		fitness = new int[ POPULATION_SIZE ];
+		nextFitness = new int[ POPULATION_SIZE ];
+		improved = new boolean[ POPULATION_SIZE ];
+		offspring = new ScheduleChoice[ course.length ];
+		choiceTable = new ScheduleChoice[ course.length ][ pProblem.getRoomList().length * pProblem.getTimeGrid().getCellCount() ];
+		bestSoFar = new ScheduleChoice[ course.length ];
+		violationsForBestSoFar = Integer.MAX_VALUE;
+		context = EvaluationContext.forProblem(pProblem);
+		roomCellStamp = new int[ context.roomCells ];
+		roomCellSeats = new int[ context.roomCells ];
+		clashing = new int[ course.length ];
+		crossoverOperator.prepare(context);
+		hyperHeuristic.prepare(context);
+		mutant = new IncrementalSchedule(context);
+		timeDelta = new int[ context.timeCells ];
+		localSearches = 0;
+		localSearchGain = 0;
+		diversity = new DiversityMonitor(context, POPULATION_SIZE);
+		lowerBound = new LowerBound(context);
 		
 		/*
 		 * We start by assigning random values to the SchedulingChoice[].
 		 * Although it is random, it is not fully random:
 		 */
-		choice = assignRandomValues(pProblem);
+		if (pState == null)
+			assignRandomValues(pProblem, choice, 0);
+		else
+			restore(pState, fingerprint, choice);
 		
-
+		CheckpointWriter writer = null;
+		if (checkpointPath != null) {
+			try {
+				if (fingerprint == null)
+					fingerprint = new ProblemFingerprint(pProblem);
+				writer = new CheckpointWriter(checkpointPath);
+			} catch (IllegalArgumentException e) {
+				Trace.warn("Running without checkpoints: " + e.getMessage());
+			}
+		}
+		
+		/* Keep track of time (including the time before a restart): */
+		long time = System.currentTimeMillis() - elapsedBefore;
+		long nextCheckpoint = System.currentTimeMillis() + CHECKPOINT_SECONDS * 1000L;
+		
+		try {
+			return mainLoop(pProblem, choice, tempChoices, time, nextCheckpoint, writer, fingerprint);
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+	
+	/**
+	 * The main loop of run(), from generation firstLoop on.
+	 */
+	private ScheduleChoice[] mainLoop(SchedulingProblem pProblem, ScheduleChoice[][] choice, ScheduleChoice[][] tempChoices, long time,
+			long nextCheckpoint, CheckpointWriter writer, ProblemFingerprint fingerprint) {
 		
 		/* The main loop: */
-		for (int j = 0; j < MAX_LOOPS; j++) {
+		for (int j = firstLoop; j < MAX_LOOPS; j++) {
 			
 			/*
-			 * If all constraints are satisfied, we found a solution! So,
-			 * return that solution:
+			 * If all constraints are satisfied (or we can prove that's as good as
+			 * it gets), we found a solution! So, return that solution:
 			 */
 			for (int i = 0; i < POPULATION_SIZE; i++) {
-				if (satisfiesAllConstraints(pProblem, choice, i)) 
+				if (lowerBound.isOptimal(fitness[i])) 
 					return choice[i]; 
 			}
 
-			/* Prepare the next generation of the population with all the mutated values: */
-			for(int i = 0; i < POPULATION_SIZE - 1; i += CHILDREN_PER_COUPLE) {
-
+			if (STEADY_STATE) {
+				/* Children replace the worst individuals one at a time: */
+				replaceWorst(pProblem, choice);
+			} else {
 				/* 
-				 * Choose who will reproduce this time based on their fittest. Schedule choices
-				 * with less violations have more chances to be seltected for reprodution.
+				 * Build the next generation in the other buffer and swap them.
+				 * Parents and children never share the same arrays:
 				 */
-				ScheduleChoice[] choiceA = chooseRandomAssignment(pProblem, choice, temperature);
-				ScheduleChoice[] choiceB = chooseRandomAssignment(pProblem, choice, temperature);
-
-				/*
-				 * choiceA and choiceB produces CHILDREN_PER_COUPLE children. Grab those children
-				 */
-				ScheduleChoice[][] combinedChoice = crossover(choiceA, choiceB, course.length);
-
-				/* 
-				 * Add the children to the next generation's population: 
-				 * */
-				for (int k = 0; k < CHILDREN_PER_COUPLE; k++)
-					tempChoices[i+k] = mutate(combinedChoice[k], pProblem);
-
+				nextGeneration(pProblem, choice, tempChoices);
+				ScheduleChoice[][] swap = choice;
+				choice = tempChoices;
+				tempChoices = swap;
+				int[] swapFitness = fitness;
+				fitness = nextFitness;
+				nextFitness = swapFitness;
 			}
-			
-			/* Replace the previous choices with the new generation of mutants: */
-			choice = tempChoices;
 
 			/*
 			 * Get the best assignment for the current generation of mutants.
@@ -133,30 +267,280 @@ public class Scheduler1 implements Scheduler {
 			 */
 			int bestOfGenerationConstraints = prepareBestSoFar(pProblem, choice);
 			
-			//if (j % 40 == 0) System.out.println("Best assignment of generation " + j + ": " + bestOfGenerationConstraints); //DEBUG
+			if (Trace.isOn(Trace.DEBUG) && j % 40 == 0)
+				Trace.log(Trace.DEBUG, "Best assignment of generation " + j + ": " + bestOfGenerationConstraints);
 			
 			/* Reset the choices if the algorithm got stucked: */
-			choice = resetIfStucked(pProblem, choice, bestOfGenerationConstraints);
+			resetIfStucked(pProblem, choice, bestOfGenerationConstraints);
 			
-			/* Update the temperature: */
-			temperature = updateTemperature(temperature);
+			/* Trade individuals with the other islands now and then: */
+			if (migration != null && (j + 1) % MIGRATION_INTERVAL == 0)
+				migrate(pProblem, choice);
+			
+			/* Save the state now and then. The writer does the disk work on its own thread: */
+			long now = System.currentTimeMillis();
+			if (writer != null && now >= nextCheckpoint) {
+				saveCheckpoint(writer, fingerprint, choice, j + 1, now - time);
+				nextCheckpoint = now + CHECKPOINT_SECONDS * 1000L;
+			}
 			
 			/* Abandon the loop if it's running for too long: */
-			long secondsElapsed = (System.currentTimeMillis() - time) / 1000;
-			if (secondsElapsed > HALT_AFTER_SECONDS) break;
+			long secondsElapsed = (now - time) / 1000;
+			if ((stopAt == Long.MAX_VALUE && secondsElapsed > HALT_AFTER_SECONDS) || now >= stopAt) break;
+			
+			/* Let the other solves of a batch have a go: */
+			if (yieldEveryLoop) Thread.yield();
 			
 		}
 		
-		//System.out.println("No solution found in time. Sending the one with the least constraints (" + violationsForBestSoFar + ").");
+		if (Trace.isOn(Trace.INFO))
+			Trace.log(Trace.INFO, "No solution found in time. Sending the one with the least constraints (" + violationsForBestSoFar + ").");
 		return bestSoFar;
 	}
 	
 	/**
-	 * Check if the param choice[i] satifies all the constraints.
-	 * @return true if there are no violations.
+	 * Copies the state of the search into a buffer of the writer: the loop counter, the time taken, the stagnation counters, the random number
+	 * generator, the best schedule so far, the population with its fitness and the tabu list. Skipped if the last checkpoint is still being
+	 * written.
+	 */
+	private void saveCheckpoint(CheckpointWriter writer, ProblemFingerprint fingerprint, ScheduleChoice[][] choice, int loop, long elapsed) {
+		byte[] random = Checkpoint.serialize(r);
+		int schedule = Checkpoint.scheduleSize(fingerprint);
+		int size = Checkpoint.headerSize() + 4 + 8 + 4 * 4 + 4 + random.length + schedule + 4 + POPULATION_SIZE * (4 + schedule) + 4
+				+ tabuList.length * (1 + schedule);
+		ByteBuffer buffer = writer.begin(size);
+		if (buffer == null)
+			return;
+		Checkpoint.putHeader(buffer, Checkpoint.GENETIC_ALGORITHM, fingerprint);
+		buffer.putInt(loop).putLong(elapsed);
+		buffer.putInt(violationsForBestSoFar).putInt(lastLoopConstraints).putInt(totalLoopsWithSameConstraints).putInt(tabuListLocation);
+		buffer.putInt(random.length).put(random);
+		Checkpoint.putSchedule(buffer, fingerprint, bestSoFar);
+		buffer.putInt(POPULATION_SIZE);
+		for (int i = 0; i < POPULATION_SIZE; i++) {
+			buffer.putInt(fitness[i]);
+			Checkpoint.putSchedule(buffer, fingerprint, choice[i]);
+		}
+		buffer.putInt(tabuList.length);
+		for (ScheduleChoice[] tabu : tabuList) {
+			boolean full = tabu[tabu.length - 1] != null; //Rows are always filled whole.
+			buffer.put((byte) (full ? 1 : 0));
+			if (full)
+				Checkpoint.putSchedule(buffer, fingerprint, tabu);
+			else
+				buffer.position(buffer.position() + schedule);
+		}
+		writer.commit();
+	}
+	
+	/**
+	 * The opposite of saveCheckpoint(): puts the state in the checkpoint back into the fields and into choice[][].
 	 */
-	private boolean satisfiesAllConstraints(SchedulingProblem pProblem, ScheduleChoice[][] choice, int i) {
-		return getViolations(pProblem, choice[i]) == 0;
+	private void restore(ByteBuffer pState, ProblemFingerprint fingerprint, ScheduleChoice[][] choice) {
+		try {
+			firstLoop = pState.getInt();
+			elapsedBefore = pState.getLong();
+			violationsForBestSoFar = pState.getInt();
+			lastLoopConstraints = pState.getInt();
+			totalLoopsWithSameConstraints = pState.getInt();
+			tabuListLocation = pState.getInt();
+			r = Checkpoint.getRandom(pState);
+			bestSoFar = Checkpoint.getSchedule(pState, fingerprint);
+			if (pState.getInt() != POPULATION_SIZE)
+				throw new IllegalArgumentException("The checkpoint was saved with another POPULATION_SIZE");
+			for (int i = 0; i < POPULATION_SIZE; i++) {
+				fitness[i] = pState.getInt();
+				choice[i] = Checkpoint.getSchedule(pState, fingerprint);
+			}
+			if (pState.getInt() != tabuList.length)
+				throw new IllegalArgumentException("The checkpoint was saved with another TABU_LIST_MAX_LENGTH");
+			for (int i = 0; i < tabuList.length; i++) {
+				if (pState.get() == 1)
+					tabuList[i] = Checkpoint.getSchedule(pState, fingerprint);
+				else
+					pState.position(pState.position() + Checkpoint.scheduleSize(fingerprint));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Corrupt checkpoint: it ends too soon", e);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Corrupt checkpoint: a room out of range", e);
+		}
+	}
+	
+	/**
+	 * Fills next[][] with the next generation: the ELITE_SIZE best individuals of choice[][]
+	 * are copied unchanged, the rest are mutated children of parents chosen from choice[][].
+	 * The fitness of the new individuals goes to nextFitness[].
+	 */
+	private void nextGeneration(SchedulingProblem pProblem, ScheduleChoice[][] choice, ScheduleChoice[][] next) {
+		selection.prepare(fitness, POPULATION_SIZE, r);
+		int filled = 0;
+		for (; filled < ELITE_SIZE && filled < POPULATION_SIZE; filled++) {
+			int elite = chooseElite(filled);
+			System.arraycopy(choice[elite], 0, next[filled], 0, choice[elite].length);
+			nextFitness[filled] = fitness[elite];
+		}
+		
+		while (filled < POPULATION_SIZE) {
+			/* 
+			 * Choose who will reproduce this time based on their fittest. Schedule choices
+			 * with less violations have more chances to be seltected for reprodution.
+			 */
+			ScheduleChoice[] choiceA = choice[ selection.select(r) ];
+			ScheduleChoice[] choiceB = choice[ selection.select(r) ];
+			
+			/* choiceA and choiceB produce up to CHILDREN_PER_COUPLE children: */
+			for (int k = 0; k < CHILDREN_PER_COUPLE && filled < POPULATION_SIZE; k++, filled++) {
+				crossover(choiceA, choiceB, next[filled], pProblem);
+				mutate(next[filled], pProblem);
+				nextFitness[filled] = getViolations(pProblem, next[filled]);
+			}
+		}
+		
+		if (MEMETIC)
+			improveBestChildren(pProblem, next);
+	}
+	
+	/**
+	 * Memetic step: the MEMETIC_ELITE best children in next[] (the copied elite doesn't count) get a
+	 * local search, each with probability LOCAL_SEARCH_PROBABILITY. The poor children would be gone in
+	 * a generation or two anyway, so the local search time goes where it can pay off.
+	 */
+	private void improveBestChildren(SchedulingProblem pProblem, ScheduleChoice[][] next) {
+		int from = Math.min(ELITE_SIZE, POPULATION_SIZE);
+		Arrays.fill(improved, false);
+		for (int k = 0; k < MEMETIC_ELITE; k++) {
+			int best = -1;
+			for (int i = from; i < POPULATION_SIZE; i++)
+				if (!improved[i] && (best < 0 || nextFitness[i] < nextFitness[best]))
+					best = i;
+			if (best < 0)
+				return;
+			improved[best] = true;
+			if (r.nextDouble() < LOCAL_SEARCH_PROBABILITY)
+				nextFitness[best] = localSearch(pProblem, next[best], nextFitness[best]);
+		}
+	}
+	
+	/**
+	 * Runs steepestDescent() on the schedule and writes the result back into it. A schedule no relocation improves
+	 * may still be improved by a swap or a Kempe chain, so with ADAPTIVE_MUTATION the HyperHeuristic then tries
+	 * MUTATION_MOVES of its moves, and if they got somewhere the descent goes on from there.
+	 * @return the new number of violations of the schedule
+	 */
+	private int localSearch(SchedulingProblem pProblem, ScheduleChoice[] schedule, int violations) {
+		mutant.load(schedule);
+		boolean changed = steepestDescent(mutant);
+		if (ADAPTIVE_MUTATION) {
+			if (hyperHeuristic.improve(mutant, r, MUTATION_MOVES) > 0)
+				steepestDescent(mutant);
+			changed = true; //The HyperHeuristic keeps the moves that don't change the score, too.
+		}
+		if (!changed)
+			return violations;
+		copyBack(mutant, schedule, pProblem);
+		int after = getViolations(pProblem, schedule);
+		localSearches++;
+		localSearchGain += violations - after;
+		return after;
+	}
+	
+	/**
+	 * Steepest descent by delta evaluation: moves the course whose best relocation improves the score the most,
+	 * until no relocation improves it, LOCAL_SEARCH_DEPTH moves were made or LOCAL_SEARCH_NANOS ran out. If the
+	 * time runs out in the middle of a scan, the best move found so far is still made.
+	 * @return true if the schedule changed.
+	 */
+	private boolean steepestDescent(IncrementalSchedule s) {
+		long deadline = System.nanoTime() + LOCAL_SEARCH_NANOS;
+		EvaluationContext context = s.context;
+		int courses = context.getCourseCount();
+		boolean changed = false;
+		for (int step = 0; step < LOCAL_SEARCH_DEPTH; step++) {
+			int bestValue = s.score();
+			int bestCourse = -1;
+			int bestRoom = 0;
+			int bestCell = 0;
+			boolean outOfTime = false;
+			int first = r.nextInt(courses); //Start somewhere else every time, so a scan cut short isn't always the same part.
+			for (int k = 0; k < courses && !outOfTime; k++) {
+				int c = (first + k) % courses;
+				for (int t : context.openCells)
+					timeDelta[t] = s.timeDelta(c, t);
+				for (int rm = 0; rm < context.getRoomCount(); rm++) {
+					for (int t : context.openCells) {
+						int value = context.score(s.getRoomPenalty() + s.roomDelta(c, rm, t), s.getTimePenalty() + timeDelta[t]);
+						if (value < bestValue) {
+							bestValue = value;
+							bestCourse = c;
+							bestRoom = rm;
+							bestCell = t;
+						}
+					}
+				}
+				outOfTime = System.nanoTime() > deadline;
+			}
+			if (bestCourse < 0)
+				break;
+			s.move(bestCourse, bestRoom, bestCell);
+			changed = true;
+			if (outOfTime)
+				break;
+		}
+		return changed;
+	}
+	
+	/**
+	 * Steady-state reproduction: makes as many children as a generation would have, and each
+	 * child takes the place of the worst individual of choice[][] if it is not worse than it.
+	 * The replaced array becomes the spare buffer for the next child.
+	 */
+	private void replaceWorst(SchedulingProblem pProblem, ScheduleChoice[][] choice) {
+		selection.prepare(fitness, POPULATION_SIZE, r);
+		for (int i = 0; i < POPULATION_SIZE - ELITE_SIZE; i++) {
+			ScheduleChoice[] choiceA = choice[ selection.select(r) ];
+			ScheduleChoice[] choiceB = choice[ selection.select(r) ];
+			crossover(choiceA, choiceB, offspring, pProblem);
+			mutate(offspring, pProblem);
+			int violations = getViolations(pProblem, offspring);
+			
+			/* Memetic: only a child that would be among the MEMETIC_ELITE best gets the local search. */
+			if (MEMETIC && MEMETIC_ELITE > 0 && r.nextDouble() < LOCAL_SEARCH_PROBABILITY
+					&& violations <= fitness[chooseElite(Math.min(MEMETIC_ELITE, POPULATION_SIZE) - 1)])
+				violations = localSearch(pProblem, offspring, violations);
+			
+			int worst = 0;
+			for (int k = 1; k < POPULATION_SIZE; k++)
+				if (fitness[k] > fitness[worst])
+					worst = k;
+			if (violations <= fitness[worst]) {
+				ScheduleChoice[] replaced = choice[worst];
+				choice[worst] = offspring;
+				offspring = replaced;
+				fitness[worst] = violations;
+			}
+		}
+	}
+	
+	/**
+	 * @return the index of the (rank+1)-th best individual of the current generation.
+	 * Ties go to the first one. O(rank * POPULATION_SIZE), so keep ELITE_SIZE small.
+	 */
+	private int chooseElite(int rank) {
+		int previous = -1;
+		int previousFitness = Integer.MIN_VALUE;
+		int chosen = -1;
+		for (int e = 0; e <= rank; e++) {
+			chosen = -1;
+			for (int i = 0; i < POPULATION_SIZE; i++) {
+				boolean afterPrevious = (fitness[i] > previousFitness) || (fitness[i] == previousFitness && i > previous);
+				if (afterPrevious && (chosen < 0 || fitness[i] < fitness[chosen]))
+					chosen = i;
+			}
+			previous = chosen;
+			previousFitness = fitness[chosen];
+		}
+		return chosen;
 	}
 	
 	/**
@@ -169,10 +553,13 @@ public class Scheduler1 implements Scheduler {
 	/**
 	 * Check if the ScheduleChoice[][] choice is stucked. It will be
 	 * stucked when the last best values of the past 
-	 * REPETITIONS_TO_BE_CONSIDERED_STUCKED generations is identical.
-	 * Once stucked, return a new ScheduleChoice[][] choice.
+	 * REPETITIONS_TO_BE_CONSIDERED_STUCKED generations is identical,
+	 * or when the individuals are so alike (see DiversityMonitor) that
+	 * crossover can't make anything new.
+	 * Clones are perturbed every generation. Once stucked, only part of
+	 * the population is restarted (see partialRestart()).
 	 */
-	private ScheduleChoice[][] resetIfStucked(SchedulingProblem pProblem, ScheduleChoice[][] choice, int bestOfGenerationConstraints) {
+	private void resetIfStucked(SchedulingProblem pProblem, ScheduleChoice[][] choice, int bestOfGenerationConstraints) {
 		if (bestOfGenerationConstraints == lastLoopConstraints)
 			totalLoopsWithSameConstraints++;
 		else {
@@ -180,13 +567,86 @@ public class Scheduler1 implements Scheduler {
 			totalLoopsWithSameConstraints = 0;
 		}
 		
-		if (totalLoopsWithSameConstraints >= REPETITIONS_TO_BE_CONSIDERED_STUCKED) {
-			/* It's stucked! Get new values: */
-			choice = assignRandomValues(pProblem);
+		/* A clone of an earlier individual adds nothing, so move some of its courses: */
+		for (int i = 0; i < POPULATION_SIZE; i++) {
+			diversity.pack(i, choice[i]);
+			if (diversity.findClone(i) >= 0) {
+				perturb(choice[i], pProblem);
+				fitness[i] = getViolations(pProblem, choice[i]);
+				diversity.pack(i, choice[i]);
+			}
+		}
+		lastDiversity = diversity.diversity(POPULATION_SIZE, r);
+		
+		if (totalLoopsWithSameConstraints >= REPETITIONS_TO_BE_CONSIDERED_STUCKED || lastDiversity < MIN_DIVERSITY) {
+			partialRestart(pProblem, choice);
 			totalLoopsWithSameConstraints = 0;
-			//System.out.println("Mass extinction!");
+			if (Trace.isOn(Trace.DEBUG))
+				Trace.log(Trace.DEBUG, "Partial extinction! Diversity " + lastDiversity);
+		}
+	}
+	
+	/**
+	 * Replaces the converged part of the population by random values: the individuals (other than the
+	 * ELITE_SIZE best) that differ from the best one in fewer than CONVERGED_DISTANCE of the courses.
+	 * If none of them has converged, the worse half of the population is replaced instead. The rest of the
+	 * population keeps what it has found, so the search doesn't start over from nothing.
+	 * The population must have been packed into the DiversityMonitor.
+	 */
+	private void partialRestart(SchedulingProblem pProblem, ScheduleChoice[][] choice) {
+		boolean[] keep = new boolean[POPULATION_SIZE];
+		for (int e = 0; e < ELITE_SIZE && e < POPULATION_SIZE; e++)
+			keep[chooseElite(e)] = true;
+		int best = chooseElite(0);
+		int limit = (int) (CONVERGED_DISTANCE * choice[best].length);
+		int restarted = 0;
+		for (int i = 0; i < POPULATION_SIZE; i++) {
+			if (!keep[i] && diversity.distance(i, best) <= limit) {
+				choice[i] = randomSchedule(pProblem);
+				fitness[i] = getViolations(pProblem, choice[i]);
+				restarted++;
+			}
+		}
+		if (restarted > 0)
+			return;
+		int[] worse = new int[POPULATION_SIZE - POPULATION_SIZE / 2];
+		for (int k = 0; k < worse.length; k++)
+			worse[k] = chooseElite(POPULATION_SIZE / 2 + k); //All of them before any fitness changes.
+		for (int i : worse) {
+			if (!keep[i]) {
+				choice[i] = randomSchedule(pProblem);
+				fitness[i] = getViolations(pProblem, choice[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the best individual so far to the other islands and takes the one they send back (if any) in
+	 * place of the worst individual.
+	 */
+	private void migrate(SchedulingProblem pProblem, ScheduleChoice[][] choice) {
+		ScheduleChoice[] immigrant = migration.exchange(bestSoFar, violationsForBestSoFar);
+		if (immigrant == null)
+			return;
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		int worst = chooseElite(POPULATION_SIZE - 1);
+		for (int c = 0; c < course.length; c++)
+			choice[worst][c] = choiceFor(course, room, c, context.indexOf(immigrant[c].getRoom()), immigrant[c].getDay(), immigrant[c].getTimeSlot());
+		fitness[worst] = getViolations(pProblem, choice[worst]);
+	}
+	
+	/**
+	 * Puts CLONE_PERTURBATION of the courses of the schedule (at least one) in random rooms and open time cells.
+	 */
+	private void perturb(ScheduleChoice[] schedule, SchedulingProblem pProblem) {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		int moves = Math.max(1, (int) (CLONE_PERTURBATION * schedule.length));
+		for (int i = 0; i < moves; i++) {
+			int c = r.nextInt(schedule.length);
+			schedule[c] = randomChoiceFor(course, room, c);
 		}
-		return choice;
 	}
 	
 	/**
@@ -196,11 +656,12 @@ public class Scheduler1 implements Scheduler {
 	 * variable:
 	 */
 	private int prepareBestSoFar(SchedulingProblem pProblem, ScheduleChoice[][] choice) {
-		ScheduleChoice[] getBestAssignmentOfGeneration = chooseAssignmentLeastConstraints(pProblem, choice);
-		int bestOfGenerationConstraints = getViolations(pProblem, getBestAssignmentOfGeneration);
+		int best = chooseElite(0);
+		int bestOfGenerationConstraints = fitness[best];
 		if (bestOfGenerationConstraints <= violationsForBestSoFar) {
 			violationsForBestSoFar = bestOfGenerationConstraints;
-			bestSoFar = getBestAssignmentOfGeneration;
+			/* Copy it: the population arrays are reused by the next generations. */
+			System.arraycopy(choice[best], 0, bestSoFar, 0, bestSoFar.length);
 		}
 		return bestOfGenerationConstraints;
 	}
@@ -219,154 +680,184 @@ public class Scheduler1 implements Scheduler {
 	}
 
 	/**
-	 * Mutates a ScheduleChoice[]. The mutated choice will have MUTATION_LEVEL schedules replaced.
+	 * Mutates a ScheduleChoice[]. In MEMETIC mode, MUTATION_LEVEL random courses go to random places, which
+	 * costs nothing (the local search comes later, for the best children only). Otherwise, with ADAPTIVE_MUTATION, the
+	 * HyperHeuristic tries MUTATION_MOVES moves on it (relocations, swaps, Kempe chains...), keeping the ones
+	 * that don't make it worse. Otherwise the mutated choice will have MUTATION_LEVEL schedules replaced.
 	 * @param schedule the choice that will be mutated.
 	 * @return the new mutated algorithm
 	 */
 	private ScheduleChoice[] mutate(ScheduleChoice[] schedule, SchedulingProblem pProblem) {
-		Random r = new Random();
-		int courseIndex = r.nextInt(schedule.length);
-		for (int i = 0; i < MUTATION_LEVEL; i++) {
-			schedule[courseIndex] = getBestLocalAssignmentForCourse(courseIndex, schedule, pProblem);
-			courseIndex = incrementOrReset(courseIndex, schedule.length);
-			
-			//System.out.println("New mutation: [" + courseIndex + "] Room:" + schedule[courseIndex].getRoom() + " Date:" 
-			//+ schedule[courseIndex].getDay() + "|" + schedule[courseIndex].getTimeSlot());
+		if (MEMETIC) {
+			Course[] course = pProblem.getCourseList();
+			Room[] room = pProblem.getRoomList();
+			for (int i = 0; i < MUTATION_LEVEL; i++) {
+				int c = r.nextInt(schedule.length);
+				schedule[c] = randomChoiceFor(course, room, c);
+			}
+		} else if (ADAPTIVE_MUTATION) {
+			mutant.load(schedule);
+			hyperHeuristic.improve(mutant, r, MUTATION_MOVES);
+			copyBack(mutant, schedule, pProblem);
+		} else {
+			int courseIndex = r.nextInt(schedule.length);
+			for (int i = 0; i < MUTATION_LEVEL; i++) {
+				schedule[courseIndex] = getBestLocalAssignmentForCourse(courseIndex, schedule, pProblem);
+				courseIndex = incrementOrReset(courseIndex, schedule.length);
+				
+				//System.out.println("New mutation: [" + courseIndex + "] Room:" + schedule[courseIndex].getRoom() + " Date:" 
+				//+ schedule[courseIndex].getDay() + "|" + schedule[courseIndex].getTimeSlot());
+			}
 		}
 		if (!isInTabuList(schedule))
 			addToTabuList(schedule);
 		return schedule;
 	}
 
-	private double updateTemperature(double temperature) {
-		if (temperature < 0.0001)
-			return temperature;
-		return temperature *= COOLING_SCHEDULE;
+	/**
+	 * Writes the courses that moved in pFrom back into the schedule (which is ordered like the course list).
+	 */
+	private void copyBack(IncrementalSchedule pFrom, ScheduleChoice[] schedule, SchedulingProblem pProblem) {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		for (int c = 0; c < schedule.length; c++) {
+			int day = pFrom.cell[c] / context.slots;
+			int time = pFrom.cell[c] % context.slots;
+			if (schedule[c].getRoom() != room[pFrom.room[c]] || schedule[c].getDay() != day || schedule[c].getTimeSlot() != time)
+				schedule[c] = choiceFor(course, room, c, pFrom.room[c], day, time);
+		}
 	}
 
 	/**
-	 * Combine the choices of choiceA with the choices of choiceB randomly.
-	 * Produces CHILDREN_PER_COUPLE children. Returns them in an array:
+	 * @return how the children were improved in the last run: the local searches in MEMETIC mode, and
+	 * which HyperHeuristic moves were picked and how well they did if ADAPTIVE_MUTATION.
 	 */
-	private ScheduleChoice[][] crossover(ScheduleChoice[] choiceA, ScheduleChoice[] choiceB, int size) {
-		Random r = new Random();
-		ScheduleChoice[][] combinedChoice = new ScheduleChoice[ CHILDREN_PER_COUPLE ][ size ];
-		
-		for(int i = 0; i < CHILDREN_PER_COUPLE; i++) {
-			
-			/* Combine the choices of both parents to make one child: */
-			for (int k = 0; k < size; k++) {
-				if (r.nextInt(2) == 0)
-					combinedChoice[i][k] = choiceA[k]; //Use mother schedule
-				else
-					combinedChoice[i][k] = choiceB[k]; //Use father schedule
-			}
-		}
+	public String operatorReport() {
+		String report = ADAPTIVE_MUTATION ? hyperHeuristic.operatorReport() : "";
+		if (MEMETIC)
+			report = "\tmemetic: " + localSearches + " local searches took " + localSearchGain + " violations off the best children\n" + report;
+		return report;
+	}
+
+	/**
+	 * Combine the choices of choiceA with the choices of choiceB using the crossoverOperator.
+	 * Writes one child into the param child (which must not be one of the parents), and repairs
+	 * its room clashes if REPAIR_CHILDREN is set.
+	 */
+	private void crossover(ScheduleChoice[] choiceA, ScheduleChoice[] choiceB, ScheduleChoice[] child, SchedulingProblem pProblem) {
+		crossoverOperator.crossover(choiceA, choiceB, child, r);
 			/*
 			 * I know this is different from the original crossover from the genetic algorithm.
 			 * But, it is better that way, so all the courses keep at the same index.
 			 */
-		return combinedChoice;
+		if (REPAIR_CHILDREN)
+			repair(child, pProblem);
 	}
 
 	/**
-	 * Grab a ScheduleChoice[] from the param choice.
-	 * The ScheduleChoice[] selected is based on the
-	 * probability. Choices with more violations have
-	 * less chances of being selected.
-
-	 * @param temperature plays a role in the probability.
-	 * Higher the temperature, more likely to choose schedules with
-	 * less probability.
-	 * @return the chosen schedule.
+	 * Moves every course that shares a room cell with an earlier course to a free room cell. O(courses + room cells).
+	 * A room with seats is only shared when the students of the exams don't fit in it (an empty cell takes any exam).
+	 * A free room at the same day and time slot is preferred, because it doesn't change any student conflict. Blocked time cells are never used.
+	 * If there are no free cells left at all, the remaining clashes are left alone.
 	 */
-	private ScheduleChoice[] chooseRandomAssignment(SchedulingProblem pProblem, ScheduleChoice[][] choice, double temperature) {
-		
-		Random r = new Random();
-		double rand = r.nextDouble();
-		
-		double violations[] = new double[POPULATION_SIZE];
-		double probability[] = new double[POPULATION_SIZE];
-	
-		double totalViolations = 0;
-		double sumOfProbabilities = 0;
+	private void repair(ScheduleChoice[] child, SchedulingProblem pProblem) {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		int timeCells = context.timeCells;
+		repairStamp++;
 		
-		for (int i = 0; i < POPULATION_SIZE; i++) {
-			violations[i] = getViolations(pProblem, choice[i]);
-			if (violations[i] == 0) return choice[i];
-			violations[i] = 1.0 / violations[i];
-			violations[i] = Math.exp(-violations[i]/temperature);
-			totalViolations += violations[i];
+		/* First come, first served: */
+		int totalClashing = 0;
+		for (int k = 0; k < child.length; k++) {
+			int cell = context.indexOf(child[k].getRoom()) * timeCells + child[k].getDay() * context.slots + child[k].getTimeSlot();
+			if (hasRoomFor(cell, k))
+				take(cell, k);
+			else
+				clashing[totalClashing++] = k;
 		}
 		
-		for (int i = 0; i < POPULATION_SIZE; i++) {
-			probability[i] = violations[i] / totalViolations;
-			sumOfProbabilities += probability[i];
-			if (sumOfProbabilities >= rand) {
-				return choice[i];
+		int cursor = r.nextInt(context.roomCells); //Where to look for any free cell, moving forward only.
+		int lookedAt = 0;
+		for (int i = 0; i < totalClashing; i++) {
+			int k = clashing[i];
+			int time = child[k].getDay() * context.slots + child[k].getTimeSlot();
+			int freeCell = -1;
+			for (int rm = 0; rm < room.length && freeCell < 0 && !context.blocked[time]; rm++)
+				if (hasRoomFor(rm * timeCells + time, k))
+					freeCell = rm * timeCells + time;
+			while (freeCell < 0 && lookedAt < context.roomCells) {
+				if (hasRoomFor(cursor, k) && !context.blocked[cursor % timeCells])
+					freeCell = cursor;
+				cursor = incrementOrReset(cursor, context.roomCells);
+				lookedAt++;
 			}
+			if (freeCell < 0)
+				return; //Every room cell is taken.
+			take(freeCell, k);
+			time = freeCell % timeCells;
+			child[k] = choiceFor(course, room, k, freeCell / timeCells, time / context.slots, time % context.slots);
 		}
-
-		System.err.println("All probabilities failed. Sum:" + sumOfProbabilities + " Rand:" + rand);
-		return choice[r.nextInt(POPULATION_SIZE)];
 	}
 
 	/**
-	 * Check every ScheduleChoice[] in the param choice.
-	 * @return the choice with the smallest amount of violations.
+	 * @return true if the room cell is free in the child being repaired, or is in a room with enough seats left for course k.
 	 */
-	private ScheduleChoice[] chooseAssignmentLeastConstraints(SchedulingProblem pProblem, ScheduleChoice[][] choice) {
-		int chosenAssignmentIndex = 0;
-		int chosenAssignmentViolations = Integer.MAX_VALUE;
-		
-		for (int i = 0; i < POPULATION_SIZE; i++) {
-			int violations = getViolations(pProblem, choice[i]);
-			if (violations <= chosenAssignmentViolations) {
-				chosenAssignmentIndex = i;
-				chosenAssignmentViolations = violations;
-			}
+	private boolean hasRoomFor(int roomCell, int k) {
+		if (roomCellStamp[roomCell] != repairStamp)
+			return true;
+		int seats = context.capacity[roomCell / context.timeCells];
+		return seats > 0 && roomCellSeats[roomCell] + context.courseSize[k] <= seats;
+	}
+
+	private void take(int roomCell, int k) {
+		if (roomCellStamp[roomCell] != repairStamp) {
+			roomCellStamp[roomCell] = repairStamp;
+			roomCellSeats[roomCell] = 0;
 		}
-		return choice[chosenAssignmentIndex];
+		roomCellSeats[roomCell] += context.courseSize[k];
 	}
 
 	/**
-	 * @return a full ScheduleChoice[POPULATION_SIZE][] array with random values (not so random).
+	 * Fills choice[from..POPULATION_SIZE-1] with random values (not so random) and evaluates them.
 	 */
-	private ScheduleChoice[][] assignRandomValues(SchedulingProblem pProblem) {
-		Course[] course = pProblem.getCourseList();
-		ScheduleChoice[][] choice = new ScheduleChoice[ POPULATION_SIZE ][ course.length ];
-		
-		for (int i = 0; i < POPULATION_SIZE; i++) {
+	private void assignRandomValues(SchedulingProblem pProblem, ScheduleChoice[][] choice, int from) {
+		for (int i = from; i < POPULATION_SIZE; i++) {
 				choice[i] = randomSchedule(pProblem);
+				fitness[i] = getViolations(pProblem, choice[i]);
 		}
-		return choice;
 	}
 
 	/**
 	 * Returns a random ScheduleChoice[] with random schedules.
 	 * The result is not so random because it tries to minimize
-	 * the number of room, day, and time conflicts.
+	 * the number of room, day, and time conflicts. Blocked time cells are stepped over.
 	 */
 	public ScheduleChoice[] randomSchedule(SchedulingProblem pProblem) {
 		Course[] course = pProblem.getCourseList();
 		Room[] room = pProblem.getRoomList();
-		Random r = new Random();
-		int time = r.nextInt(TIME_SLOTS);
+		TimeGrid grid = pProblem.getTimeGrid();
+		int slots = grid.getSlots();
+		int time = r.nextInt(slots);
 		int day = r.nextInt(pProblem.getExamPeriod());
 		int roomIndex = r.nextInt(room.length);
-		double sumOfDomains = TIME_SLOTS + pProblem.getExamPeriod() + room.length;
+		double sumOfDomains = slots + pProblem.getExamPeriod() + room.length;
 		
-		double timeProbability = TIME_SLOTS / sumOfDomains;
+		double timeProbability = slots / sumOfDomains;
 		double dayProbability = pProblem.getExamPeriod() / sumOfDomains;
 		
 		ScheduleChoice choice[] = new ScheduleChoice[ course.length ];
 		
 		for (int i = 0; i < course.length; i++) {
 			double probability = r.nextDouble();
+			while (grid.isBlocked(day, time)) {
+				time = incrementOrReset(time, slots);
+				if (time == 0)
+					day = incrementOrReset(day, pProblem.getExamPeriod());
+			}
 			choice[i] = new ScheduleChoice(course[i], room[roomIndex], day, time);
 			
 			if (timeProbability >= probability)
-				time = incrementOrReset(time, TIME_SLOTS);
+				time = incrementOrReset(time, slots);
 			else {
 				probability -= timeProbability;
 				if (dayProbability >= probability)
@@ -387,7 +878,8 @@ public class Scheduler1 implements Scheduler {
 		Course[] course = pProblem.getCourseList();
 		Room[] room = pProblem.getRoomList();
 		Random r = new Random();
-		int time = r.nextInt(TIME_SLOTS);
+		int slots = pProblem.getTimeGrid().getSlots();
+		int time = r.nextInt(slots);
 		int day = r.nextInt(pProblem.getExamPeriod());
 		int roomIndex = r.nextInt(room.length);
 		int variant = r.nextInt(3);
@@ -398,7 +890,7 @@ public class Scheduler1 implements Scheduler {
 			
 			switch (variant) {
 			case 0:
-				time = incrementOrReset(time, TIME_SLOTS);
+				time = incrementOrReset(time, slots);
 			case 1:
 				day = incrementOrReset(day, pProblem.getExamPeriod());
 			case 2:
@@ -419,15 +911,19 @@ public class Scheduler1 implements Scheduler {
 	public ScheduleChoice getBestLocalAssignmentForCourse(int courseIndex, ScheduleChoice[] schedule, SchedulingProblem pProblem) {
 		Course[] course = pProblem.getCourseList();
 		Room[] room = pProblem.getRoomList();
-		final int TOTAL_DAYS = pProblem.getExamPeriod();
+		TimeGrid grid = pProblem.getTimeGrid();
+		int days = grid.getDays();
+		int slots = grid.getSlots();
 		int violationsOfBestChoice = getViolations(pProblem, schedule);
 		int countSearches = 0;
 		
 		for (int i = 0; i < room.length; i++) {
-			for (int j = 0; j < TOTAL_DAYS; j++) {
-				for (int k = 0; k < TIME_SLOTS; k++) {
+			for (int j = 0; j < days; j++) {
+				for (int k = 0; k < slots; k++) {
+					if (grid.isBlocked(j, k))
+						continue;
 					ScheduleChoice savedChoice = schedule[courseIndex];
-					schedule[courseIndex] = new ScheduleChoice(course[courseIndex], room[i], j, k);
+					schedule[courseIndex] = choiceFor(course, room, courseIndex, i, j, k);
 					
 					countSearches++;
 					if (countSearches > LOCAL_SEARCH_MAX)
@@ -449,10 +945,34 @@ public class Scheduler1 implements Scheduler {
 	}
 
 	/**
-	 * Add the schedule to the TabuList that keeps track of visited schedules:
+	 * @return the shared ScheduleChoice for a course in (room, day, time slot), creating it the first time.
+	 * Nobody changes a ScheduleChoice once it's in a schedule, so the same object can be in many schedules.
+	 */
+	private ScheduleChoice choiceFor(Course[] course, Room[] room, int courseIndex, int roomIndex, int day, int time) {
+		int cellsPerRoom = choiceTable[courseIndex].length / room.length;
+		int cell = roomIndex * cellsPerRoom + day * context.slots + time;
+		ScheduleChoice choice = choiceTable[courseIndex][cell];
+		if (choice == null) {
+			choice = new ScheduleChoice(course[courseIndex], room[roomIndex], day, time);
+			choiceTable[courseIndex][cell] = choice;
+		}
+		return choice;
+	}
+
+	/**
+	 * @return the shared ScheduleChoice for a course in a random room and open time cell.
+	 */
+	private ScheduleChoice randomChoiceFor(Course[] course, Room[] room, int courseIndex) {
+		int cell = context.openCells[r.nextInt(context.openCells.length)];
+		return choiceFor(course, room, courseIndex, r.nextInt(room.length), cell / context.slots, cell % context.slots);
+	}
+
+	/**
+	 * Add a copy of the schedule to the TabuList that keeps track of visited schedules
+	 * (a copy, because the population arrays are reused):
 	 */
 	private void addToTabuList(ScheduleChoice[] schedule) {
-		tabuList[tabuListLocation] = schedule;
+		System.arraycopy(schedule, 0, tabuList[tabuListLocation], 0, schedule.length);
 		tabuListLocation = incrementOrReset(tabuListLocation, TABU_LIST_MAX_LENGTH);
 	}
 	
@@ -1,5 +1,8 @@
 package scheduler;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -41,54 +44,149 @@ public class Scheduler2 implements Scheduler {
 	final int MAX_LOOPS = 100000; //Total of loops for the main loop. If it gets over that, returns the best solution so far.
 	final int TABU_LIST_MAX_LENGTH = 200; //Total of schedules to keep track
 	final int LOCAL_SEARCH_MAX = 50000; // Max. number of comparisons when choosing the most optimal ScheduleChoice.
-	final int REPETITIONS_TO_BE_CONSIDERED_STUCKED = 100; //If the last loops had exactly the same best value, reset search.
+	final int REPETITIONS_TO_BE_CONSIDERED_STUCKED = 100; //If the last loops had exactly the same best value, restart part of the search.
+	final double RESTART_FRACTION = 0.3; //Fraction of the courses of the best schedule so far that a restart puts in random places.
 	final double COOLING_SCHEDULE = 1; //The cooling schedule for the temperature
 	final double STARTING_TEMPERATURE = 100;
+	final int CHECKPOINT_SECONDS = 60; //How often the state of the search is saved, if there is a checkpoint file.
+	final int NEIGHBOURHOOD_MOVES = 200; //Swap and Kempe-chain moves tried on the current schedule in every loop, accepted by the temperature.
 	
 	/*
 	 * Other variables:
 	 */
-	final int TIME_SLOTS = 4; //Total of time slots for the exams. This must be equal ScheduleChoice.times.length;
 	ScheduleChoice[][] tabuList; //Stores the tabu list
 	int tabuListLocation = 0; //The tabu list is a circular list, so stores the current index of the circular list.
 
 	ScheduleChoice[] bestSoFar = null; //Keeps track of the best ScheduleChoice[] found so far.
-	int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far.
+	volatile int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far (volatile, so a SolverDaemon can report it).
+	volatile long stopAt = Long.MAX_VALUE; //If set, System.currentTimeMillis() at which to stop, instead of after HALT_AFTER_SECONDS.
+	boolean yieldEveryLoop = false; //Give the thread up after every loop, so many solves sharing a few threads take turns (see BatchSolver).
+	
+	LowerBound lowerBound; //No schedule can score less than this, so stop as soon as we get there.
+	
+	/*
+	 * The swap and Kempe-chain moves work on plain int arrays, so they can be scored by delta evaluation:
+	 */
+	IncrementalSchedule current; //The schedule being walked.
+	IncrementalSchedule bestOfWalk; //The best schedule the walk went through.
+	int[] chain; //The Kempe chain being tried.
+	int[] mark; //Scratch space for the Kempe chains.
+	int stamp = 0;
 	
 	/* Declare variables that will keep track if the algorithm is stucked: */
 	int lastLoopConstraints = 0;
 	int totalLoopsWithSameConstraints = 0;
+	
+	/*
+	 * Checkpoints, so a long run survives a restart of the JVM:
+	 */
+	String checkpointPath = null; //Where to save the state of the search (null: don't).
+	int firstLoop = 0; //The main loop starts here (not 0 when resuming).
+	long elapsedBefore = 0; //Milliseconds the run had already taken before it was resumed.
+	double temperature = STARTING_TEMPERATURE;
+
+	/**
+	 * @param pPath the file the state of the search is saved to every CHECKPOINT_SECONDS (null: no checkpoints)
+	 */
+	public void setCheckpointFile(String pPath) {
+		checkpointPath = pPath;
+	}
 
 	/**
 	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
 	 */
 	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		firstLoop = 0;
+		elapsedBefore = 0;
+		lastLoopConstraints = 0;
+		totalLoopsWithSameConstraints = 0;
+		tabuListLocation = 0;
+		bestSoFar = null;
+		violationsForBestSoFar = Integer.MAX_VALUE;
+		return run(pProblem, null, null);
+	}
+
+	/**
+	 * Continues a run from a checkpoint saved by schedule() or resume(), possibly in another JVM. The problem must be the same (it may be a
+	 * new copy of it), and so must TABU_LIST_MAX_LENGTH. The run keeps saving checkpoints to the same file.
+	 *
+	 * @param pProblem the problem of the checkpoint
+	 * @param pCheckpointPath the checkpoint file
+	 * @return the best schedule found, before and after the restart
+	 * @throws IOException if the checkpoint can't be read or belongs to something else
+	 * @throws IllegalArgumentException if the checkpoint is corrupt or was saved with other constants
+	 */
+	public ScheduleChoice[] resume(SchedulingProblem pProblem, String pCheckpointPath) throws IOException {
+		checkpointPath = pCheckpointPath;
+		ProblemFingerprint fingerprint = new ProblemFingerprint(pProblem);
+		return run(pProblem, Checkpoint.read(pCheckpointPath, Checkpoint.SIMULATED_ANNEALING, fingerprint), fingerprint);
+	}
+
+	/**
+	 * The Simulated Annealing itself. Starts from a random schedule, or from pState if it is not null.
+	 */
+	private ScheduleChoice[] run(SchedulingProblem pProblem, ByteBuffer pState, ProblemFingerprint fingerprint) {
 		
 		 /* Declare and prepare variables: */
 		Course[] course = pProblem.getCourseList();
 		ScheduleChoice[] choice = new ScheduleChoice[ course.length ];
 		tabuList = new ScheduleChoice[TABU_LIST_MAX_LENGTH][ course.length ];
-		
-		/* Keep track of time: */
-		long time = System.currentTimeMillis();
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		lowerBound = new LowerBound(context);
+		current = new IncrementalSchedule(context);
+		bestOfWalk = new IncrementalSchedule(context);
+		chain = new int[ course.length ];
+		mark = new int[ course.length + context.getStudentCount() ];
 		
 		/* Initialize the temperature: */
-		double temperature = STARTING_TEMPERATURE;
+		temperature = STARTING_TEMPERATURE;
 		
 		/*
 		 * We start by assigning random values to the SchedulingChoice[].
 		 * Although it is random, it is not fully random:
 		 */
-		choice = randomSchedule(pProblem);
+		if (pState == null)
+			choice = randomSchedule(pProblem);
+		else
+			choice = restore(pState, fingerprint);
+		
+		CheckpointWriter writer = null;
+		if (checkpointPath != null) {
+			try {
+				if (fingerprint == null)
+					fingerprint = new ProblemFingerprint(pProblem);
+				writer = new CheckpointWriter(checkpointPath);
+			} catch (IllegalArgumentException e) {
+				Trace.warn("Running without checkpoints: " + e.getMessage());
+			}
+		}
+		
+		/* Keep track of time (including the time before a restart): */
+		long time = System.currentTimeMillis() - elapsedBefore;
+		long nextCheckpoint = System.currentTimeMillis() + CHECKPOINT_SECONDS * 1000L;
+		
+		try {
+			return mainLoop(pProblem, choice, time, nextCheckpoint, writer, fingerprint);
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+	
+	/**
+	 * The main loop of run(), from iteration firstLoop on.
+	 */
+	private ScheduleChoice[] mainLoop(SchedulingProblem pProblem, ScheduleChoice[] choice, long time, long nextCheckpoint, CheckpointWriter writer,
+			ProblemFingerprint fingerprint) {
 		
 		/* The main loop: */
-		for (int j = 0; j < MAX_LOOPS; j++) {
+		for (int j = firstLoop; j < MAX_LOOPS; j++) {
 			
 			/*
-			 * If all constraints are satisfied, we found a solution! 
-			 * So, return that solution:
+			 * If all constraints are satisfied (or we can prove that's as good as
+			 * it gets), we found a solution! So, return that solution:
 			 */
-			if ( getViolations(pProblem, choice) == 0 ) return choice;
+			if ( lowerBound.isOptimal(getViolations(pProblem, choice)) ) return choice;
 			
 			
 			/* Decides the next path: */
@@ -104,7 +202,8 @@ public class Scheduler2 implements Scheduler {
 			 */
 			int bestOfGenerationConstraints = prepareBestSoFar(pProblem, choice);
 			
-			//if (j % 20 == 0) System.out.println("Best at " + j + ": " + bestOfGenerationConstraints); //DEBUG
+			if (Trace.isOn(Trace.DEBUG) && j % 20 == 0)
+				Trace.log(Trace.DEBUG, "Best at " + j + ": " + bestOfGenerationConstraints);
 			
 			/* Reset the choices if the algorithm got stucked: */
 			choice = resetIfStucked(pProblem, choice, bestOfGenerationConstraints);
@@ -112,15 +211,85 @@ public class Scheduler2 implements Scheduler {
 			/* Update the temperature: */
 			temperature = updateTemperature(temperature);
 			
+			/* Save the state now and then. The writer does the disk work on its own thread: */
+			long now = System.currentTimeMillis();
+			if (writer != null && now >= nextCheckpoint) {
+				saveCheckpoint(writer, fingerprint, choice, j + 1, now - time);
+				nextCheckpoint = now + CHECKPOINT_SECONDS * 1000L;
+			}
+			
 			/* Abandon the loop if it's running for too long: */
-			long secondsElapsed = (System.currentTimeMillis() - time) / 1000;
-			if (secondsElapsed > HALT_AFTER_SECONDS) break;
+			long secondsElapsed = (now - time) / 1000;
+			if ((stopAt == Long.MAX_VALUE && secondsElapsed > HALT_AFTER_SECONDS) || now >= stopAt) break;
+			
+			/* Let the other solves of a batch have a go: */
+			if (yieldEveryLoop) Thread.yield();
 			
 		}
-		//System.out.println("No solution found in time. Sending the one with the least constraints (" + violationsForBestSoFar + ").");
+		if (Trace.isOn(Trace.INFO))
+			Trace.log(Trace.INFO, "No solution found in time. Sending the one with the least constraints (" + violationsForBestSoFar + ").");
 		return bestSoFar;
 	}
 
+	/**
+	 * Copies the state of the search into a buffer of the writer: the loop counter, the time taken, the temperature, the stagnation counters,
+	 * the current and the best schedule and the tabu list. Skipped if the last checkpoint is still being written. There is no random number
+	 * generator state to save: every random choice here uses a fresh Random.
+	 */
+	private void saveCheckpoint(CheckpointWriter writer, ProblemFingerprint fingerprint, ScheduleChoice[] choice, int loop, long elapsed) {
+		int schedule = Checkpoint.scheduleSize(fingerprint);
+		int size = Checkpoint.headerSize() + 4 + 8 + 8 + 4 * 4 + 2 * schedule + 4 + tabuList.length * (1 + schedule);
+		ByteBuffer buffer = writer.begin(size);
+		if (buffer == null)
+			return;
+		Checkpoint.putHeader(buffer, Checkpoint.SIMULATED_ANNEALING, fingerprint);
+		buffer.putInt(loop).putLong(elapsed).putDouble(temperature);
+		buffer.putInt(violationsForBestSoFar).putInt(lastLoopConstraints).putInt(totalLoopsWithSameConstraints).putInt(tabuListLocation);
+		Checkpoint.putSchedule(buffer, fingerprint, choice);
+		Checkpoint.putSchedule(buffer, fingerprint, bestSoFar);
+		buffer.putInt(tabuList.length);
+		for (ScheduleChoice[] tabu : tabuList) {
+			boolean full = tabu[tabu.length - 1] != null; //Rows are always filled whole.
+			buffer.put((byte) (full ? 1 : 0));
+			if (full)
+				Checkpoint.putSchedule(buffer, fingerprint, tabu);
+			else
+				buffer.position(buffer.position() + schedule);
+		}
+		writer.commit();
+	}
+	
+	/**
+	 * The opposite of saveCheckpoint(): puts the state in the checkpoint back into the fields.
+	 * @return the current schedule of the checkpoint.
+	 */
+	private ScheduleChoice[] restore(ByteBuffer pState, ProblemFingerprint fingerprint) {
+		try {
+			firstLoop = pState.getInt();
+			elapsedBefore = pState.getLong();
+			temperature = pState.getDouble();
+			violationsForBestSoFar = pState.getInt();
+			lastLoopConstraints = pState.getInt();
+			totalLoopsWithSameConstraints = pState.getInt();
+			tabuListLocation = pState.getInt();
+			ScheduleChoice[] choice = Checkpoint.getSchedule(pState, fingerprint);
+			bestSoFar = Checkpoint.getSchedule(pState, fingerprint);
+			if (pState.getInt() != tabuList.length)
+				throw new IllegalArgumentException("The checkpoint was saved with another TABU_LIST_MAX_LENGTH");
+			for (int i = 0; i < tabuList.length; i++) {
+				if (pState.get() == 1)
+					tabuList[i] = Checkpoint.getSchedule(pState, fingerprint);
+				else
+					pState.position(pState.position() + Checkpoint.scheduleSize(fingerprint));
+			}
+			return choice;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Corrupt checkpoint: it ends too soon", e);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Corrupt checkpoint: a room out of range", e);
+		}
+	}
+
 	/**
 	 * Choose a new ScheduleChoice[] for the param choice. Return this schedule.
 	 * The schedule is based on Simulated Annealing. It will compare with a random
@@ -131,6 +300,7 @@ public class Scheduler2 implements Scheduler {
 		ScheduleChoice[] newChoice = randomSchedule(pProblem);
 		int oldChoiceViolations = getViolations(pProblem, choice);
 		choice = getLocalBestCombination(pProblem, choice);
+		choice = exploreSwapsAndChains(choice, temperature);
 		newChoice = getLocalBestCombination(pProblem, newChoice );
 		
 		int newChoiceViolations = getViolations(pProblem, newChoice);
@@ -175,6 +345,51 @@ public class Scheduler2 implements Scheduler {
 		return choice;
 	}
 	
+	/**
+	 * Walks NEIGHBOURHOOD_MOVES swap and Kempe-chain moves (half of each) from the param choice, scored by
+	 * delta evaluation. A move that makes things worse is still taken with probability exp(-increase / temperature),
+	 * so the walk gets off the plateaus where moving a single course only makes room clashes.
+	 * @return the best schedule the walk went through (the param choice itself if it never got better).
+	 */
+	private ScheduleChoice[] exploreSwapsAndChains(ScheduleChoice[] choice, double temperature) {
+		Random r = new Random();
+		int courses = choice.length;
+		current.load(choice);
+		bestOfWalk.copyFrom(current);
+		int start = current.score();
+		for (int i = 0; i < NEIGHBOURHOOD_MOVES && courses > 1; i++) {
+			int before = current.score();
+			int a = r.nextInt(courses);
+			if (r.nextBoolean()) {
+				int b = r.nextInt(courses);
+				if (b != a && acceptMove(before, current.scoreAfterSwap(a, b), temperature, r))
+					current.swap(a, b);
+			} else {
+				int first = current.cell[a];
+				int second = current.context.openCells[r.nextInt(current.context.openCells.length)];
+				if (second == first)
+					continue;
+				int size = current.kempeChain(a, second, chain, mark, ++stamp);
+				if (acceptMove(before, current.scoreAfterKempe(chain, size, first, second, mark, stamp), temperature, r))
+					current.kempe(chain, size, first, second);
+			}
+			if (current.score() < bestOfWalk.score())
+				bestOfWalk.copyFrom(current);
+		}
+		if (bestOfWalk.score() < start)
+			return bestOfWalk.toChoices();
+		return choice;
+	}
+	
+	/**
+	 * @return true if a move from a schedule with pBefore violations to one with pAfter should be taken at this temperature.
+	 */
+	private boolean acceptMove(int pBefore, int pAfter, double temperature, Random r) {
+		if (pAfter <= pBefore)
+			return true;
+		return Math.exp((pBefore - pAfter) / temperature) > r.nextDouble();
+	}
+	
 	private double updateTemperature(double temperature) {
 		if (temperature < 0.0001)
 			return temperature;
@@ -193,7 +408,9 @@ public class Scheduler2 implements Scheduler {
 	 * Check if the ScheduleChoice[] choice is stucked. It will be
 	 * stucked when the last best values of the past 
 	 * REPETITIONS_TO_BE_CONSIDERED_STUCKED generations is identical.
-	 * Once stucked, return a new ScheduleChoice[] choice.
+	 * Once stucked, return a new ScheduleChoice[] choice: the best so far
+	 * with RESTART_FRACTION of its courses in random places, so the search
+	 * restarts near what it found instead of from nothing.
 	 */
 	private ScheduleChoice[] resetIfStucked(SchedulingProblem pProblem, ScheduleChoice[] choice, int bestOfGenerationConstraints) {
 		if (bestOfGenerationConstraints == lastLoopConstraints)
@@ -204,13 +421,31 @@ public class Scheduler2 implements Scheduler {
 		}
 		
 		if (totalLoopsWithSameConstraints >= REPETITIONS_TO_BE_CONSIDERED_STUCKED) {
-			/* It's stucked! Get new values: */
-			choice = randomSchedule(pProblem);
+			/* It's stucked! Get new values for part of the best schedule: */
+			choice = partialRestart(pProblem, bestSoFar);
 			totalLoopsWithSameConstraints = 0;
 		}
 		return choice;
 	}
 	
+	/**
+	 * @return a copy of the param schedule with RESTART_FRACTION of its courses (at least one) in random rooms and open time cells.
+	 */
+	private ScheduleChoice[] partialRestart(SchedulingProblem pProblem, ScheduleChoice[] schedule) {
+		Course[] course = pProblem.getCourseList();
+		Room[] room = pProblem.getRoomList();
+		Random r = new Random();
+		TimeGrid grid = pProblem.getTimeGrid();
+		ScheduleChoice[] choice = schedule.clone();
+		int moves = Math.max(1, (int) (RESTART_FRACTION * choice.length));
+		for (int i = 0; i < moves; i++) {
+			int c = r.nextInt(choice.length);
+			int cell = grid.randomOpenCell(r);
+			choice[c] = new ScheduleChoice(course[c], room[r.nextInt(room.length)], cell / grid.getSlots(), cell % grid.getSlots());
+		}
+		return choice;
+	}
+	
 	/**
 	 * Function used for circular values.
 	 * @param value the value to be incremented.
@@ -243,28 +478,35 @@ public class Scheduler2 implements Scheduler {
 	/**
 	 * Returns a random ScheduleChoice[] with random schedules.
 	 * The result is not so random because it tries to minimize
-	 * the number of room, day, and time conflicts.
+	 * the number of room, day, and time conflicts. Blocked time cells are stepped over.
 	 */
 	public ScheduleChoice[] randomSchedule(SchedulingProblem pProblem) {
 		Course[] course = pProblem.getCourseList();
 		Room[] room = pProblem.getRoomList();
 		Random r = new Random();
-		int time = r.nextInt(TIME_SLOTS);
+		TimeGrid grid = pProblem.getTimeGrid();
+		int slots = grid.getSlots();
+		int time = r.nextInt(slots);
 		int day = r.nextInt(pProblem.getExamPeriod());
 		int roomIndex = r.nextInt(room.length);
-		double sumOfDomains = TIME_SLOTS + pProblem.getExamPeriod() + room.length;
+		double sumOfDomains = slots + pProblem.getExamPeriod() + room.length;
 		
-		double timeProbability = TIME_SLOTS / sumOfDomains;
+		double timeProbability = slots / sumOfDomains;
 		double dayProbability = pProblem.getExamPeriod() / sumOfDomains;
 		
 		ScheduleChoice choice[] = new ScheduleChoice[ course.length ];
 		
 		for (int i = 0; i < course.length; i++) {
 			double probability = r.nextDouble();
+			while (grid.isBlocked(day, time)) {
+				time = incrementOrReset(time, slots);
+				if (time == 0)
+					day = incrementOrReset(day, pProblem.getExamPeriod());
+			}
 			choice[i] = new ScheduleChoice(course[i], room[roomIndex], day, time);
 			
 			if (timeProbability >= probability)
-				time = incrementOrReset(time, TIME_SLOTS);
+				time = incrementOrReset(time, slots);
 			else {
 				probability -= timeProbability;
 				if (dayProbability >= probability)
@@ -286,13 +528,17 @@ public class Scheduler2 implements Scheduler {
 	public ScheduleChoice getBestLocalAssignmentForCourse(int courseIndex, ScheduleChoice[] schedule, SchedulingProblem pProblem) {
 		Course[] course = pProblem.getCourseList();
 		Room[] room = pProblem.getRoomList();
-		final int TOTAL_DAYS = pProblem.getExamPeriod();
+		TimeGrid grid = pProblem.getTimeGrid();
+		int days = grid.getDays();
+		int slots = grid.getSlots();
 		int violationsOfBestChoice = getViolations(pProblem, schedule);
 		int countSearches = 0;
 		
 		for (int i = 0; i < room.length; i++) {
-			for (int j = 0; j < TOTAL_DAYS; j++) {
-				for (int k = 0; k < TIME_SLOTS; k++) {
+			for (int j = 0; j < days; j++) {
+				for (int k = 0; k < slots; k++) {
+					if (grid.isBlocked(j, k))
+						continue;
 					ScheduleChoice savedChoice = schedule[courseIndex];
 					schedule[courseIndex] = new ScheduleChoice(course[courseIndex], room[i], j, k);
 					
@@ -9,7 +9,7 @@ package scheduler;
 
 public class SchedulingProblem {
 
-	private final int examPeriod = 5;
+	private final TimeGrid timeGrid;
 
 	private Course[] courseList;
 
@@ -17,20 +17,37 @@ public class SchedulingProblem {
 
 	private Student[] studentList;
 
+	volatile EvaluationContext context; //Built the first time it is needed, see EvaluationContext.forProblem().
+
 	/**
 	 * Sets up a scheduling problem. Maybe be done manually, but you probably want to generate one of these using the Generator class.
 	 */
 	public SchedulingProblem(Course[] pCList, Room[] pRList, Student[] pSList) {
+		this(pCList, pRList, pSList, TimeGrid.DEFAULT);
+	}
+
+	/**
+	 * Sets up a scheduling problem over another exam period than the default 5 days of 4 slots.
+	 */
+	public SchedulingProblem(Course[] pCList, Room[] pRList, Student[] pSList, TimeGrid pTimeGrid) {
+		timeGrid = pTimeGrid;
 		courseList = pCList;
 		roomList = pRList;
 		studentList = pSList;
 	}
 
 	/**
-	 * The number of days in the exam period. This number will always be 5.
+	 * The number of days in the exam period. 5 unless the problem was given another TimeGrid.
 	 */
 	public int getExamPeriod() {
-		return examPeriod;
+		return timeGrid.getDays();
+	}
+
+	/**
+	 * The days, slots and blocked cells of the exam period.
+	 */
+	public TimeGrid getTimeGrid() {
+		return timeGrid;
 	}
 
 	public Course[] getCourseList() {
@@ -47,7 +64,8 @@ public class SchedulingProblem {
 
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
-		sb.append("Courses:");
+		sb.append("Exam period: " + timeGrid);
+		sb.append("\nCourses:");
 		for (int i = 0; i < courseList.length; i++) {
 			sb.append("\n\t" + courseList[i].toString());
 		}
@@ -0,0 +1,25 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Picks the parents of the Genetic Algorithm. The fitness of the population (number of violations, lower is better) is computed once per
+ * generation and handed to {@link #prepare(int[], int, Random)}; after that every call to {@link #select(Random)} should be cheap, so the
+ * population can grow without making parent selection quadratic.
+ */
+public interface SelectionStrategy {
+
+	/**
+	 * Called once per generation, before any parent is selected.
+	 *
+	 * @param pFitness the violations of each individual. The array may be kept (not copied) until the next call.
+	 * @param pSize how many individuals there are
+	 * @param r the random number generator of the scheduler
+	 */
+	public void prepare(int[] pFitness, int pSize, Random r);
+
+	/**
+	 * @return the index of the chosen individual.
+	 */
+	public int select(Random r);
+}
@@ -0,0 +1,29 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Copies whole (day, time slot) blocks from the mother: about half of the time cells are picked, and every course the mother has in one of those
+ * cells keeps the mother's choice. All the other courses come from the father. Courses that sit together in the mother (and so were arranged
+ * around each other) stay together in the child.
+ */
+public class SlotBlockCrossover implements CrossoverOperator {
+
+	private boolean[] fromMother = new boolean[0]; //fromMother[t] is true if time cell t is copied from the mother
+
+	private int slots;
+
+	public void prepare(EvaluationContext pContext) {
+		fromMother = new boolean[pContext.timeCells];
+		slots = pContext.slots;
+	}
+
+	public void crossover(ScheduleChoice[] pMother, ScheduleChoice[] pFather, ScheduleChoice[] pChild, Random r) {
+		for (int t = 0; t < fromMother.length; t++)
+			fromMother[t] = r.nextBoolean();
+		for (int k = 0; k < pChild.length; k++) {
+			int cell = pMother[k].getDay() * slots + pMother[k].getTimeSlot();
+			pChild[k] = fromMother[cell] ? pMother[k] : pFather[k];
+		}
+	}
+}
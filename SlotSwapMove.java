@@ -0,0 +1,41 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Swaps two whole open time cells: every exam of one goes to the other, in the same room. Neither the room clashes nor the student clashes
+ * change, so this only pays off with soft constraints or student weights that tell the cells apart, or as a cheap sideways step.
+ */
+public class SlotSwapMove implements MoveOperator {
+
+	public String getName() {
+		return "slot-swap";
+	}
+
+	public void prepare(EvaluationContext pContext) {
+	}
+
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r) {
+		EvaluationContext context = pSchedule.context;
+		int open = context.openCells.length;
+		if (open < 2)
+			return 0;
+		int i = r.nextInt(open);
+		int j = r.nextInt(open - 1);
+		if (j >= i)
+			j++;
+		int a = context.openCells[i];
+		int b = context.openCells[j];
+		int count = 0;
+		for (int c = 0; c < context.getCourseCount(); c++) {
+			int t = pSchedule.cell[c];
+			if (t != a && t != b)
+				continue;
+			pMoves[3 * count] = c;
+			pMoves[3 * count + 1] = pSchedule.room[c];
+			pMoves[3 * count + 2] = t == a ? b : a;
+			count++;
+		}
+		return count;
+	}
+}
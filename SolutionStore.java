@@ -0,0 +1,268 @@
+package scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the best known schedule of every problem it has seen, keyed by ProblemFingerprint, in a compact file that survives between runs.
+ *
+ * The file is a header followed by records, each one a fingerprint, a MyEvaluator score and, for every course in canonical order, a room
+ * index and a time cell (4 bytes per course). A better schedule for a known problem is appended and the old record becomes dead; the file is
+ * rewritten without the dead records once they are the majority. Only the offsets of the records stay in memory, together with an LRU of the
+ * last CACHE_SIZE records read, so a big store doesn't need a big heap.
+ *
+ * All the methods are synchronized, so one store can be shared by any number of schedulers.
+ */
+public class SolutionStore {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int CACHE_SIZE = 64; //Records kept decoded in memory.
+	final int MIN_DEAD_TO_COMPACT = 16; //Don't rewrite the file for a handful of dead records.
+
+	private static final int MAGIC = 0x45584d53; //"EXMS"
+	private static final short VERSION = 1;
+	private static final int HEADER = 6;
+	private static final int DIGEST = 32;
+
+	/**
+	 * A saved schedule in canonical order (see ProblemFingerprint).
+	 */
+	private static class Record {
+		final int score;
+		final short[] room;
+		final short[] cell;
+
+		Record(int pScore, short[] pRoom, short[] pCell) {
+			score = pScore;
+			room = pRoom;
+			cell = pCell;
+		}
+	}
+
+	private final File file;
+	private final HashMap<String, Long> offsets = new HashMap<String, Long>(); //where the live record of each fingerprint starts
+	private final LinkedHashMap<String, Record> cache;
+	private int dead = 0; //records in the file that a better one replaced
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Opens a store, creating the file if it doesn't exist.
+	 *
+	 * @param pPath the file to keep the schedules in
+	 * @throws IOException if the file can't be read or isn't a solution store
+	 */
+	public SolutionStore(String pPath) throws IOException {
+		file = new File(pPath);
+		cache = new LinkedHashMap<String, Record>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Record> pEldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() == 0) {
+				raf.writeInt(MAGIC);
+				raf.writeShort(VERSION);
+			} else {
+				if (raf.length() < HEADER || raf.readInt() != MAGIC || raf.readShort() != VERSION)
+					throw new IOException(pPath + " is not a solution store");
+				scan(raf);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the offsets of all the records. A record cut short by a crash is dropped.
+	 */
+	private void scan(RandomAccessFile raf) throws IOException {
+		long end = raf.length();
+		long position = HEADER;
+		byte[] digest = new byte[DIGEST];
+		while (position + DIGEST + 6 <= end) {
+			raf.seek(position);
+			raf.readFully(digest);
+			raf.readInt(); //score
+			int courses = raf.readUnsignedShort();
+			long next = position + DIGEST + 6 + 4L * courses;
+			if (next > end)
+				break;
+			if (offsets.put(ProblemFingerprint.toHex(digest), position) != null)
+				dead++;
+			position = next;
+		}
+		if (position < end)
+			raf.setLength(position);
+	}
+
+	/**
+	 * @return the best known schedule of the problem, ordered like its course list, or null if the store doesn't know the problem.
+	 */
+	public synchronized ScheduleChoice[] lookup(ProblemFingerprint pFingerprint) {
+		Record record = read(pFingerprint);
+		if (record == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return pFingerprint.decode(record.room, record.cell);
+	}
+
+	/**
+	 * @return the score of the best known schedule of the problem, or Integer.MAX_VALUE if there is none.
+	 */
+	public synchronized int getScore(ProblemFingerprint pFingerprint) {
+		Record record = read(pFingerprint);
+		return record == null ? Integer.MAX_VALUE : record.score;
+	}
+
+	/**
+	 * Saves a schedule if it is better than the one the store knows for the problem.
+	 *
+	 * @param pFingerprint the problem
+	 * @param pSolution a complete schedule of it
+	 * @param pScore its MyEvaluator score
+	 * @return true if the schedule was saved
+	 */
+	public synchronized boolean offer(ProblemFingerprint pFingerprint, ScheduleChoice[] pSolution, int pScore) {
+		if (pScore >= getScore(pFingerprint))
+			return false;
+		int courses = pFingerprint.getCourseCount();
+		Record record = new Record(pScore, new short[courses], new short[courses]);
+		pFingerprint.encode(pSolution, record.room, record.cell);
+		String key = pFingerprint.getKey();
+		cache.put(key, record);
+		try {
+			long position = append(pFingerprint.getDigest(), record);
+			if (offsets.put(key, position) != null)
+				dead++;
+			if (dead >= MIN_DEAD_TO_COMPACT && dead > offsets.size())
+				compact();
+		} catch (IOException e) {
+			Trace.warn("Could not save the schedule to " + file + ": " + e);
+		}
+		return true;
+	}
+
+	private long append(byte[] pDigest, Record pRecord) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long position = raf.length();
+			raf.seek(position);
+			raf.write(encode(pDigest, pRecord).array());
+			return position;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private ByteBuffer encode(byte[] pDigest, Record pRecord) {
+		ByteBuffer buffer = ByteBuffer.allocate(DIGEST + 6 + 4 * pRecord.room.length);
+		buffer.put(pDigest);
+		buffer.putInt(pRecord.score);
+		buffer.putShort((short) pRecord.room.length);
+		for (int c = 0; c < pRecord.room.length; c++)
+			buffer.putShort(pRecord.room[c]).putShort(pRecord.cell[c]);
+		return buffer;
+	}
+
+	/**
+	 * @return the record of the problem from the LRU or, failing that, from the file. null if there is none.
+	 */
+	private Record read(ProblemFingerprint pFingerprint) {
+		String key = pFingerprint.getKey();
+		Record record = cache.get(key);
+		if (record != null)
+			return record;
+		Long position = offsets.get(key);
+		if (position == null)
+			return null;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				raf.seek(position + DIGEST);
+				int score = raf.readInt();
+				int courses = raf.readUnsignedShort();
+				if (courses != pFingerprint.getCourseCount())
+					return null; //Two problems with the same SHA-256? Treat it as a miss.
+				byte[] bytes = new byte[4 * courses];
+				raf.readFully(bytes);
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				record = new Record(score, new short[courses], new short[courses]);
+				for (int c = 0; c < courses; c++) {
+					record.room[c] = buffer.getShort();
+					record.cell[c] = buffer.getShort();
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			Trace.warn("Could not read a schedule from " + file + ": " + e);
+			return null;
+		}
+		cache.put(key, record);
+		return record;
+	}
+
+	/**
+	 * Rewrites the file with the live records only, then swaps it in.
+	 */
+	private void compact() throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		HashMap<String, Long> moved = new HashMap<String, Long>();
+		RandomAccessFile from = new RandomAccessFile(file, "r");
+		RandomAccessFile to = new RandomAccessFile(temporary, "rw");
+		try {
+			to.setLength(0);
+			to.writeInt(MAGIC);
+			to.writeShort(VERSION);
+			for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+				from.seek(entry.getValue() + DIGEST + 4);
+				int length = DIGEST + 6 + 4 * from.readUnsignedShort();
+				byte[] bytes = new byte[length];
+				from.seek(entry.getValue());
+				from.readFully(bytes);
+				moved.put(entry.getKey(), to.getFilePointer());
+				to.write(bytes);
+			}
+		} finally {
+			from.close();
+			to.close();
+		}
+		if (!temporary.renameTo(file)) {
+			/* Some platforms won't rename over an existing file: */
+			if (!file.delete() || !temporary.renameTo(file))
+				throw new IOException("Could not replace " + file + " with " + temporary);
+		}
+		offsets.clear();
+		offsets.putAll(moved);
+		dead = 0;
+	}
+
+	/**
+	 * @return the number of problems in the store
+	 */
+	public synchronized int size() {
+		return offsets.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
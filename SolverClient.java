@@ -0,0 +1,131 @@
+package scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Sends problems to a SolverDaemon on this machine. Override progress() to follow the solve.
+ */
+public class SolverClient {
+
+	private final int port;
+	private int queued = 0;
+	private int score = Integer.MAX_VALUE;
+	private int milliseconds = 0;
+
+	/**
+	 * @param pPort the port of the daemon
+	 */
+	public SolverClient(int pPort) {
+		port = pPort;
+	}
+
+	/**
+	 * Solves a problem on the daemon and waits for the schedule.
+	 *
+	 * @param pProblem the problem
+	 * @param pEngine SolverDaemon.TABU_SEARCH, GENETIC_ALGORITHM or SIMULATED_ANNEALING
+	 * @param pMilliseconds the time budget
+	 * @return the schedule, ordered like the problem's course list
+	 * @throws IllegalStateException if the daemon is too busy to take the problem (try again later)
+	 * @throws IOException if the daemon can't be reached or can't solve the problem
+	 */
+	public ScheduleChoice[] solve(SchedulingProblem pProblem, byte pEngine, int pMilliseconds) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			socket.setTcpNoDelay(true);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(SolverDaemon.MAGIC);
+			out.writeByte(pEngine);
+			out.writeInt(pMilliseconds);
+			ProblemCodec.writeProblem(out, pProblem);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			while (true) {
+				byte frame = in.readByte();
+				switch (frame) {
+				case SolverDaemon.ACCEPTED:
+				case SolverDaemon.QUEUED:
+					queued = in.readInt();
+					break;
+				case SolverDaemon.PROGRESS:
+					int elapsed = in.readInt();
+					progress(elapsed, in.readInt());
+					break;
+				case SolverDaemon.RESULT:
+					score = in.readInt();
+					milliseconds = in.readInt();
+					return ProblemCodec.readSchedule(in, pProblem);
+				case SolverDaemon.REJECTED:
+					throw new IllegalStateException("The solver daemon is busy: " + in.readUTF());
+				case SolverDaemon.ERROR:
+					throw new IOException("The solver daemon couldn't solve the problem: " + in.readUTF());
+				default:
+					throw new IOException("Unknown frame from the solver daemon: " + frame);
+				}
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Called every time the daemon reports on the solve. Does nothing by default.
+	 *
+	 * @param pElapsed milliseconds since the solve started
+	 * @param pBest best score so far (Integer.MAX_VALUE if there is none yet)
+	 */
+	protected void progress(int pElapsed, int pBest) {
+	}
+
+	/**
+	 * @return the place of the last problem in the daemon's queue, as last reported (solves waiting when it was accepted, then its place
+	 *         while it waited)
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return the MyEvaluator score of the last schedule, as the daemon computed it
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * @return how long the daemon took to solve the last problem
+	 */
+	public int getMilliseconds() {
+		return milliseconds;
+	}
+
+	/**
+	 * Solves a generated problem (the medium one of Driver) on a running daemon.
+	 *
+	 * @param args the port of the daemon (optional), the engine (optional, 0: tabu search, 1: genetic algorithm, 2: simulated annealing) and
+	 *            the time budget in milliseconds (optional)
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : SolverDaemon.DEFAULT_PORT;
+		byte engine = args.length > 1 ? Byte.parseByte(args[1]) : SolverDaemon.TABU_SEARCH;
+		int budget = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+		SchedulingProblem problem = new Generator(60, 4, 600, 0.9).generateProblem(1);
+
+		SolverClient client = new SolverClient(port) {
+			protected void progress(int pElapsed, int pBest) {
+				System.out.println(pElapsed + " ms: " + (pBest == Integer.MAX_VALUE ? "no schedule yet" : "best " + pBest));
+			}
+		};
+		long time = System.currentTimeMillis();
+		ScheduleChoice[] schedule = client.solve(problem, engine, budget);
+		System.out.println("Solved in " + client.getMilliseconds() + " ms (" + (System.currentTimeMillis() - time) + " ms with the trip): "
+				+ client.getScore() + " violations, " + new Evaluator().violatedConstraints(problem, schedule) + " by the Evaluator.");
+	}
+}
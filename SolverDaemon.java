@@ -0,0 +1,352 @@
+package scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long-running solver, so a re-solve doesn't pay for the JVM start-up, the class loading and the JIT warm-up every time (for sub-second
+ * solves that is most of the latency of a fresh "java Driver"). It listens on a port of the loopback address only: clients send a problem in
+ * the ProblemCodec format, get progress frames while it is being solved and then the schedule. See SolverClient.
+ *
+ * Admission control: at most WORKERS problems are solved at once and at most QUEUE_CAPACITY wait for a worker. A problem that doesn't fit is
+ * rejected right away, so clients back off instead of piling up behind a queue that never drains. A client that goes away stops its solve
+ * (the genetic algorithm and simulated annealing stop at their next generation; a queued solve never starts). A queued client hears its
+ * place in the queue every PROGRESS_MILLISECONDS, which is also how the daemon finds out that it went away.
+ *
+ * A request is MAGIC, the engine (a byte), the time budget in milliseconds (an int) and the problem. Every answer frame is a type byte:
+ * ACCEPTED (int: solves waiting, this one included), QUEUED (int: place in the queue, 1 for the next one to start), REJECTED (UTF: why),
+ * PROGRESS (int: milliseconds since the solve started, int: best score so far, Integer.MAX_VALUE before the first), RESULT (int: MyEvaluator
+ * score, int: milliseconds, the schedule) or ERROR (UTF: why).
+ */
+public class SolverDaemon {
+
+	/*
+	 * Constants to play with:
+	 */
+	final int WORKERS = Runtime.getRuntime().availableProcessors(); //Problems solved at the same time.
+	final int QUEUE_CAPACITY = 16; //Problems that may wait for a worker. Any more are rejected.
+	final int MAX_CONNECTIONS = WORKERS + QUEUE_CAPACITY + 4; //Open connections (a few more than the solves, for the ones being read).
+	final int MAX_MILLISECONDS = 600000; //Longest time budget a request may ask for.
+	final int PROGRESS_MILLISECONDS = 500; //How often a client hears about the solve.
+	final int READ_TIMEOUT_MILLISECONDS = 10000; //A client that takes longer than this to send its request is dropped.
+
+	public static final int DEFAULT_PORT = 7345;
+	static final int MAGIC = 0x45584d52; //"EXMR"
+
+	/* Engines: */
+	public static final byte TABU_SEARCH = 0;
+	public static final byte GENETIC_ALGORITHM = 1;
+	public static final byte SIMULATED_ANNEALING = 2;
+
+	/* Answer frames: */
+	static final byte ACCEPTED = 1;
+	static final byte REJECTED = 2;
+	static final byte PROGRESS = 3;
+	static final byte RESULT = 4;
+	static final byte ERROR = 5;
+	static final byte QUEUED = 6;
+
+	private final ServerSocket server;
+	private final ThreadPoolExecutor solvers;
+	private final ThreadPoolExecutor connections;
+	private final Thread acceptor;
+	private volatile boolean closed = false;
+
+	/**
+	 * Binds the port and starts taking requests.
+	 *
+	 * @param pPort the port to listen on (0: any free port, see getPort())
+	 * @throws IOException if the port can't be bound
+	 */
+	public SolverDaemon(int pPort) throws IOException {
+		server = new ServerSocket(pPort, MAX_CONNECTIONS, InetAddress.getLoopbackAddress());
+		solvers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				daemonThreads("solver"));
+		connections = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				daemonThreads("connection"));
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				acceptLoop();
+			}
+		}, "solver daemon");
+		acceptor.start();
+	}
+
+	private static ThreadFactory daemonThreads(final String pName) {
+		return new ThreadFactory() {
+			int count = 0;
+
+			public synchronized Thread newThread(Runnable pTask) {
+				Thread thread = new Thread(pTask, pName + " " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * @return the port the daemon listens on
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Stops taking requests and stops the solves in progress.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+		solvers.shutdownNow();
+		connections.shutdownNow();
+	}
+
+	private void acceptLoop() {
+		while (!closed) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				if (!closed)
+					Trace.warn("The solver daemon stopped taking requests: " + e);
+				return;
+			}
+			try {
+				connections.execute(new Runnable() {
+					public void run() {
+						serve(socket);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				/* Too many open connections. The answer is a few bytes, so it fits in the socket buffer and can't block the acceptor: */
+				try {
+					DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+					out.writeByte(REJECTED);
+					out.writeUTF("too many connections");
+					out.flush();
+				} catch (IOException ignored) {
+				}
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	/**
+	 * Reads a request, queues it and streams the answers back until the solve is done or the client goes away.
+	 */
+	private void serve(Socket pSocket) {
+		try {
+			pSocket.setSoTimeout(READ_TIMEOUT_MILLISECONDS);
+			pSocket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(pSocket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(pSocket.getOutputStream()));
+
+			Solve solve;
+			try {
+				if (in.readInt() != MAGIC)
+					throw new IOException("Not a solve request");
+				byte engine = in.readByte();
+				int milliseconds = in.readInt();
+				if (engine < TABU_SEARCH || engine > SIMULATED_ANNEALING)
+					throw new IOException("Unknown engine " + engine);
+				if (milliseconds <= 0 || milliseconds > MAX_MILLISECONDS)
+					throw new IOException("The time budget must be between 1 and " + MAX_MILLISECONDS + " ms, not " + milliseconds);
+				solve = new Solve(engine, milliseconds, ProblemCodec.readProblem(in));
+			} catch (IOException e) {
+				out.writeByte(ERROR);
+				out.writeUTF(String.valueOf(e.getMessage()));
+				out.flush();
+				return;
+			}
+
+			Future<ScheduleChoice[]> future;
+			try {
+				future = solvers.submit(solve);
+			} catch (RejectedExecutionException e) {
+				out.writeByte(REJECTED);
+				out.writeUTF(closed ? "shutting down" : "queue full");
+				out.flush();
+				return;
+			}
+			out.writeByte(ACCEPTED);
+			out.writeInt(solvers.getQueue().size());
+			out.flush();
+
+			try {
+				ScheduleChoice[] schedule = waitFor(future, solve, out);
+				out.writeByte(RESULT);
+				out.writeInt(new MyEvaluator().violatedConstraints(solve.problem, schedule));
+				out.writeInt((int) solve.elapsed());
+				ProblemCodec.writeSchedule(out, solve.problem, schedule);
+			} catch (ExecutionException e) {
+				out.writeByte(ERROR);
+				out.writeUTF(String.valueOf(e.getCause()));
+			} catch (IOException e) {
+				/* The client went away: its solve isn't needed anymore. */
+				solve.stop();
+				future.cancel(false);
+				solvers.remove((Runnable) future); //Frees its place in the queue right away.
+				throw e;
+			}
+			out.flush();
+		} catch (SocketException e) {
+			//The client closed the connection.
+		} catch (IOException e) {
+			Trace.warn("Dropping a solver daemon client: " + e);
+		} catch (InterruptedException e) {
+			//The daemon is closing.
+		} finally {
+			closeQuietly(pSocket);
+		}
+	}
+
+	/**
+	 * Waits for the solve, sending a QUEUED frame every PROGRESS_MILLISECONDS while it waits for a worker and a PROGRESS frame once it has
+	 * started.
+	 *
+	 * @throws IOException if a frame can't be sent (the client went away)
+	 */
+	private ScheduleChoice[] waitFor(Future<ScheduleChoice[]> pFuture, Solve pSolve, DataOutputStream out) throws IOException,
+			ExecutionException, InterruptedException {
+		while (true) {
+			try {
+				return pFuture.get(PROGRESS_MILLISECONDS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (pSolve.isStarted()) {
+					out.writeByte(PROGRESS);
+					out.writeInt((int) pSolve.elapsed());
+					out.writeInt(pSolve.best());
+				} else {
+					out.writeByte(QUEUED);
+					out.writeInt(placeInQueue(pFuture));
+				}
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * @return 1 if the solve is the next one to start, 2 if one is ahead of it... (0 if it has just left the queue)
+	 */
+	private int placeInQueue(Future<ScheduleChoice[]> pFuture) {
+		int place = 1;
+		for (Runnable waiting : solvers.getQueue()) {
+			if (waiting == pFuture)
+				return place;
+			place++;
+		}
+		return 0;
+	}
+
+	private static void closeQuietly(Socket pSocket) {
+		try {
+			pSocket.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	/**
+	 * One problem and the engine solving it. The engines publish their best score in a volatile field, so the connection thread can read it
+	 * while the worker thread searches.
+	 */
+	private static class Solve implements Callable<ScheduleChoice[]> {
+
+		final byte engine;
+		final int milliseconds;
+		final SchedulingProblem problem;
+		final TabuSearchScheduler tabuSearch;
+		final Scheduler1 geneticAlgorithm;
+		final Scheduler2 simulatedAnnealing;
+		volatile long started = 0; //System.currentTimeMillis() when a worker picked it up (0: still waiting)
+		volatile boolean cancelled = false; //The client went away.
+
+		Solve(byte pEngine, int pMilliseconds, SchedulingProblem pProblem) {
+			engine = pEngine;
+			milliseconds = pMilliseconds;
+			problem = pProblem;
+			tabuSearch = engine == TABU_SEARCH ? new TabuSearchScheduler() : null;
+			geneticAlgorithm = engine == GENETIC_ALGORITHM ? new Scheduler1() : null;
+			simulatedAnnealing = engine == SIMULATED_ANNEALING ? new Scheduler2() : null;
+		}
+
+		public ScheduleChoice[] call() {
+			long now = System.currentTimeMillis();
+			long deadline = now + milliseconds;
+			/* The deadline goes in before the solve is published as started, and a stop() that comes in between still wins: */
+			if (geneticAlgorithm != null)
+				geneticAlgorithm.stopAt = deadline;
+			if (simulatedAnnealing != null)
+				simulatedAnnealing.stopAt = deadline;
+			if (cancelled)
+				return null;
+			started = now;
+			if (tabuSearch != null) {
+				IncrementalSchedule current = new IncrementalSchedule(EvaluationContext.forProblem(problem));
+				current.randomize(new Random());
+				return tabuSearch.search(current, deadline);
+			}
+			if (geneticAlgorithm != null)
+				return geneticAlgorithm.schedule(problem);
+			return simulatedAnnealing.schedule(problem);
+		}
+
+		boolean isStarted() {
+			return started != 0;
+		}
+
+		long elapsed() {
+			return System.currentTimeMillis() - started;
+		}
+
+		int best() {
+			if (tabuSearch != null)
+				return tabuSearch.violationsForBestSoFar;
+			if (geneticAlgorithm != null)
+				return geneticAlgorithm.violationsForBestSoFar;
+			return simulatedAnnealing.violationsForBestSoFar;
+		}
+
+		/**
+		 * Makes the engine stop at its next check of the clock.
+		 */
+		void stop() {
+			cancelled = true;
+			if (tabuSearch != null)
+				tabuSearch.stopAt = 0;
+			if (geneticAlgorithm != null)
+				geneticAlgorithm.stopAt = 0;
+			if (simulatedAnnealing != null)
+				simulatedAnnealing.stopAt = 0;
+		}
+	}
+
+	/**
+	 * Runs a daemon until the JVM is killed.
+	 *
+	 * @param args the port (optional, DEFAULT_PORT if not given)
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		SolverDaemon daemon = new SolverDaemon(port);
+		System.out.println("Solving on port " + daemon.getPort() + " with " + daemon.WORKERS + " workers and " + daemon.QUEUE_CAPACITY
+				+ " places in the queue.");
+	}
+}
@@ -0,0 +1,57 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Stochastic universal sampling: one spin of a wheel with as many evenly spaced pointers as there are individuals gives all the parents of a
+ * generation at once. Each individual gets a slice proportional to how much better it is than the worst one (plus one, so everybody has a
+ * chance). The picks are shuffled and handed out in O(1); more picks than individuals wrap around.
+ */
+public class StochasticUniversalSampling implements SelectionStrategy {
+
+	private int[] picks = new int[0];
+
+	private int next;
+
+	public void prepare(int[] pFitness, int pSize, Random r) {
+		if (picks.length != pSize)
+			picks = new int[pSize];
+
+		int worst = 0;
+		for (int i = 0; i < pSize; i++)
+			worst = Math.max(worst, pFitness[i]);
+		double total = 0;
+		for (int i = 0; i < pSize; i++)
+			total += (double) worst - pFitness[i] + 1;
+
+		/* Walk the wheel once, dropping a pointer every total/pSize: */
+		double step = total / pSize;
+		double pointer = r.nextDouble() * step;
+		double cumulative = 0;
+		int filled = 0;
+		for (int i = 0; i < pSize && filled < pSize; i++) {
+			cumulative += (double) worst - pFitness[i] + 1;
+			while (filled < pSize && pointer < cumulative) {
+				picks[filled++] = i;
+				pointer += step;
+			}
+		}
+		while (filled < pSize)
+			picks[filled++] = pSize - 1; //Rounding errors at the very end of the wheel.
+
+		/* Shuffle, so consecutive picks aren't neighbours on the wheel: */
+		for (int i = pSize - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			int swap = picks[i];
+			picks[i] = picks[j];
+			picks[j] = swap;
+		}
+		next = 0;
+	}
+
+	public int select(Random r) {
+		int pick = picks[next];
+		next = (next + 1) % picks.length;
+		return pick;
+	}
+}
@@ -21,6 +21,8 @@ public class Student {
 
 	private String studentName;
 
+	private final int studentId; //the student number, or -1 if the student doesn't have one
+
 	/**
 	 * The number of courses that all students take
 	 */
@@ -38,6 +40,13 @@ public class Student {
 		return studentName;
 	}
 
+	/**
+	 * @return the student number, which stays the same from one term to the next (-1 if the student doesn't have one)
+	 */
+	public int getStudentId() {
+		return studentId;
+	}
+
 	public Course getCourse(int i) {
 		return schedule[i];
 	}
@@ -71,6 +80,19 @@ public class Student {
 	 */
 	public Student(String pName, Course[] pSch) {
 
+		this(-1, pName, pSch);
+	}
+
+	/**
+	 * Constructs a Student object with a student number.
+	 * 
+	 * @param pId the student number (0 or more), used to look up the student's past exam conflicts (see ConflictHistory)
+	 * @param pName the name of the student
+	 * @param pSch the student's schedule
+	 */
+	public Student(int pId, String pName, Course[] pSch) {
+
+		studentId = pId;
 		studentName = pName;
 		schedule = pSch;
 	}
@@ -0,0 +1,53 @@
+package scheduler;
+
+/**
+ * An ObjectiveTerm that is a sum over the students of something that only depends on the time cells of that student's exams. Objective
+ * scores all of these terms in a single pass over the students, gathering each student's time cells once for all of them.
+ */
+public abstract class StudentTerm implements ObjectiveTerm {
+
+	/**
+	 * @param pCells the time cells of one student's exams, in no particular order
+	 * @param pCount how many of pCells are used
+	 * @param pSlots time slots per day
+	 * @return the penalty of that student
+	 */
+	public abstract int studentPenalty(int[] pCells, int pCount, int pSlots);
+
+	/**
+	 * The time cells of one student before and after a move, one pair per thread. Objective doesn't go through penalty() and delta() (it
+	 * scores studentPenalty() with the scratch of the schedule), but a term scored on its own still shouldn't allocate per move.
+	 */
+	private static final ThreadLocal<int[][]> scratch = new ThreadLocal<int[][]>() {
+		protected int[][] initialValue() {
+			return new int[2][Student.scheduleSize];
+		}
+	};
+
+	public int penalty(EvaluationContext pContext, int[] pCell, int[] pLoad) {
+		int[] cells = scratch.get()[0];
+		int total = 0;
+		for (int[] courses : pContext.studentCourses) {
+			for (int j = 0; j < courses.length; j++)
+				cells[j] = pCell[courses[j]];
+			total += studentPenalty(cells, courses.length, pContext.slots);
+		}
+		return total;
+	}
+
+	public int delta(EvaluationContext pContext, int[] pCell, int[] pLoad, int c, int pTo) {
+		int[][] cells = scratch.get();
+		int[] before = cells[0];
+		int[] after = cells[1];
+		int total = 0;
+		for (int s : pContext.courseStudents[c]) {
+			int[] courses = pContext.studentCourses[s];
+			for (int j = 0; j < courses.length; j++) {
+				before[j] = pCell[courses[j]];
+				after[j] = courses[j] == c ? pTo : before[j];
+			}
+			total += studentPenalty(after, courses.length, pContext.slots) - studentPenalty(before, courses.length, pContext.slots);
+		}
+		return total;
+	}
+}
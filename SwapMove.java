@@ -0,0 +1,38 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Two random courses in different time cells trade their rooms and time cells. Scored in closed form by IncrementalSchedule.scoreAfterSwap()
+ * before it is proposed, so a swap that would make things worse costs no moves at all.
+ */
+public class SwapMove implements MoveOperator {
+
+	public String getName() {
+		return "swap";
+	}
+
+	public void prepare(EvaluationContext pContext) {
+	}
+
+	public int propose(IncrementalSchedule pSchedule, int[] pMoves, Random r) {
+		int courses = pSchedule.context.getCourseCount();
+		if (courses < 2)
+			return 0;
+		int a = r.nextInt(courses);
+		int b = r.nextInt(courses - 1);
+		if (b >= a)
+			b++;
+		if (pSchedule.cell[a] == pSchedule.cell[b])
+			return 0; //Same students either way.
+		if (pSchedule.scoreAfterSwap(a, b) > pSchedule.score())
+			return 0;
+		pMoves[0] = a;
+		pMoves[1] = pSchedule.room[b];
+		pMoves[2] = pSchedule.cell[b];
+		pMoves[3] = b;
+		pMoves[4] = pSchedule.room[a];
+		pMoves[5] = pSchedule.cell[a];
+		return 2;
+	}
+}
@@ -0,0 +1,191 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * This Scheduler runs a tabu search over single-course moves. Instead of remembering whole schedules, it remembers attributes: once a course
+ * leaves a room cell, moving it back there is tabu for a few iterations. A tabu move is still allowed if it would beat the best schedule found so
+ * far (aspiration).
+ *
+ * Every iteration looks at the whole neighbourhood (every course to every room cell). The student part of each move is kept in a move-value
+ * table that only has to be refreshed for the moved course and its neighbours in the conflict graph; the room part is O(1) from the occupancy.
+ */
+public class TabuSearchScheduler implements Scheduler {
+
+	/**
+	 * @see scheduler.Scheduler#authors()
+	 */
+	public String authors() {
+		return "Rodrigo Alves (ID: 15674112)";
+	}
+
+	/*
+	 * Constants to play with:
+	 */
+	final int HALT_AFTER_SECONDS = 12; //It will stop after that time. It returns the best solution found so far.
+	final int MIN_TENURE = 7; //Iterations a (course, room cell) attribute stays tabu...
+	final int TENURE_SPREAD = 6; //...plus a random amount below this, so the search doesn't cycle.
+	int stallLimit = Integer.MAX_VALUE; //Give up after this many iterations without a new best schedule.
+
+	/*
+	 * Other variables:
+	 */
+	int[][] studentDelta; //studentDelta[c][t]: change of the time penalty (student clashes + soft constraints) if course c moves to time cell t.
+	int[][] tabuUntil; //tabuUntil[c][roomCell]: first iteration in which course c may move back to roomCell.
+	Random r = new Random();
+
+	ScheduleChoice[] bestSoFar = null; //Keeps track of the best ScheduleChoice[] found so far.
+	volatile int violationsForBestSoFar = Integer.MAX_VALUE; //The total of constraint violations from the best choice so far (volatile, so a SolverDaemon can report it).
+	volatile long stopAt = Long.MAX_VALUE; //If set, System.currentTimeMillis() at which to stop, even before the deadline given to search().
+	long iterations = 0; //Moves made in the last run.
+	int[] home = null; //If set, home[c] is the room cell course c starts from (-1 if it has none) and...
+	int moveLimit = Integer.MAX_VALUE; //...at most this many courses may be away from home at any time.
+	LowerBound lowerBound; //No schedule can score less than this, so stop as soon as we get there.
+
+	/**
+	 * @see scheduler.Scheduler#schedule(scheduler.SchedulingProblem)
+	 */
+	public ScheduleChoice[] schedule(SchedulingProblem pProblem) {
+		EvaluationContext context = EvaluationContext.forProblem(pProblem);
+		IncrementalSchedule current = new IncrementalSchedule(context);
+		current.randomize(r);
+		return search(current, System.currentTimeMillis() + HALT_AFTER_SECONDS * 1000L);
+	}
+
+	/**
+	 * Runs the tabu search from the given schedule until the deadline (or stopAt, if that comes first) or until a schedule is proven optimal.
+	 *
+	 * @param current the starting schedule. It is changed by the search.
+	 * @param deadline System.currentTimeMillis() at which to stop
+	 * @return the best schedule found
+	 */
+	ScheduleChoice[] search(IncrementalSchedule current, long deadline) {
+		EvaluationContext context = current.context;
+		int courses = context.getCourseCount();
+		int rooms = context.getRoomCount();
+		IncrementalSchedule best = new IncrementalSchedule(context);
+		best.copyFrom(current);
+		violationsForBestSoFar = current.score();
+		lowerBound = new LowerBound(context);
+
+		studentDelta = new int[courses][context.timeCells];
+		tabuUntil = new int[courses][context.roomCells];
+		for (int c = 0; c < courses; c++)
+			refreshRow(current, c);
+		int away = 0; //Courses away from home.
+		if (home != null)
+			for (int c = 0; c < courses; c++)
+				if (isAway(current, c))
+					away++;
+
+		int iteration;
+		int lastImprovement = 0;
+		for (iteration = 0; !lowerBound.isOptimal(violationsForBestSoFar); iteration++) {
+			/* Check the clock only now and then, it's not free: */
+			if ((iteration & 63) == 0 && System.currentTimeMillis() > Math.min(deadline, stopAt))
+				break;
+			if (iteration - lastImprovement > stallLimit)
+				break;
+
+			int bestCourse = -1;
+			int bestRoom = 0;
+			int bestCell = 0;
+			int bestValue = Integer.MAX_VALUE;
+			int ties = 0;
+			for (int c = 0; c < courses; c++) {
+				if (away >= moveLimit && home[c] >= 0 && !isAway(current, c))
+					continue; //Moving it would take one course too many away from home.
+				int[] rowDelta = studentDelta[c];
+				for (int rm = 0; rm < rooms; rm++) {
+					for (int t = 0; t < context.timeCells; t++) {
+						if ((rm == current.room[c] && t == current.cell[c]) || context.blocked[t])
+							continue;
+						int value = context.score(current.getRoomPenalty() + current.roomDelta(c, rm, t), current.getTimePenalty() + rowDelta[t]);
+						boolean tabu = tabuUntil[c][rm * context.timeCells + t] > iteration;
+						if (tabu && value >= violationsForBestSoFar)
+							continue; //Tabu, and not good enough for the aspiration criterion.
+						if (value < bestValue) {
+							bestValue = value;
+							bestCourse = c;
+							bestRoom = rm;
+							bestCell = t;
+							ties = 1;
+						} else if (value == bestValue && r.nextInt(++ties) == 0) {
+							/* Break ties uniformly at random: */
+							bestCourse = c;
+							bestRoom = rm;
+							bestCell = t;
+						}
+					}
+				}
+			}
+			if (bestCourse < 0)
+				break; //Everything is tabu. Can only happen with tiny problems.
+
+			int fromCell = current.cell[bestCourse];
+			int fromRoomCell = current.room[bestCourse] * context.timeCells + fromCell;
+			if (home != null && isAway(current, bestCourse))
+				away--;
+			current.move(bestCourse, bestRoom, bestCell);
+			if (home != null && isAway(current, bestCourse))
+				away++;
+			tabuUntil[bestCourse][fromRoomCell] = iteration + MIN_TENURE + r.nextInt(TENURE_SPREAD);
+			refreshAfterMove(current, bestCourse, fromCell, bestCell);
+
+			if (current.score() < violationsForBestSoFar) {
+				violationsForBestSoFar = current.score();
+				best.copyFrom(current);
+				lastImprovement = iteration;
+			}
+		}
+		iterations = iteration;
+		bestSoFar = best.toChoices();
+		return bestSoFar;
+	}
+
+	/**
+	 * @return true if course c has a home and is not in it.
+	 */
+	private boolean isAway(IncrementalSchedule current, int c) {
+		return home[c] >= 0 && home[c] != current.room[c] * current.context.timeCells + current.cell[c];
+	}
+
+	/**
+	 * Updates the move-value table after course c moved from time cell pFrom to pTo. Only c and the courses sharing students with it can see a
+	 * different student delta, and for a neighbour that is not in pFrom or pTo only those two columns change. Soft constraints can look at
+	 * every exam of a student's day, so with an objective the neighbours get their whole row refreshed. Terms that count the exams of a time
+	 * cell (see Objective.hasGlobalTerms()) change the pFrom and pTo columns of every course, and the whole row of every course sitting in
+	 * pFrom or pTo, since the load of the cell it would leave changed.
+	 */
+	private void refreshAfterMove(IncrementalSchedule current, int c, int pFrom, int pTo) {
+		refreshRow(current, c);
+		if (pFrom == pTo)
+			return;
+		Objective objective = current.context.objective;
+		if (objective.hasGlobalTerms()) {
+			for (int u = 0; u < studentDelta.length; u++) {
+				if (u == c)
+					continue;
+				if (current.cell[u] == pFrom || current.cell[u] == pTo) {
+					refreshRow(current, u);
+				} else {
+					studentDelta[u][pFrom] = current.timeDelta(u, pFrom);
+					studentDelta[u][pTo] = current.timeDelta(u, pTo);
+				}
+			}
+		}
+		for (int u : current.context.neighbours[c]) {
+			if (!objective.isEmpty() || current.cell[u] == pFrom || current.cell[u] == pTo) {
+				refreshRow(current, u);
+			} else {
+				studentDelta[u][pFrom] = current.timeDelta(u, pFrom);
+				studentDelta[u][pTo] = current.timeDelta(u, pTo);
+			}
+		}
+	}
+
+	private void refreshRow(IncrementalSchedule current, int c) {
+		for (int t = 0; t < current.context.timeCells; t++)
+			studentDelta[c][t] = current.timeDelta(c, t);
+	}
+}
@@ -0,0 +1,25 @@
+package scheduler;
+
+/**
+ * Soft constraint: a student with more than two exams on the same day costs 1 for every exam beyond the second.
+ */
+public class ThreePerDayTerm extends StudentTerm {
+
+	public String getName() {
+		return "three-per-day";
+	}
+
+	public int studentPenalty(int[] pCells, int pCount, int pSlots) {
+		int extra = 0;
+		for (int i = 0; i < pCount; i++) {
+			int day = pCells[i] / pSlots;
+			int sameDayBefore = 0;
+			for (int j = 0; j < i; j++)
+				if (pCells[j] / pSlots == day)
+					sameDayBefore++;
+			if (sameDayBefore >= 2)
+				extra++; //The third, fourth... exam of that day.
+		}
+		return extra;
+	}
+}
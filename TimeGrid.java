@@ -0,0 +1,124 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * The days and time slots of an exam period. A time cell is day * slots + slot, as everywhere else. Some cells may be blocked (a holiday, a
+ * morning the halls are taken): no exam may go there. The engines pick random cells among the open ones, and an exam in a blocked cell
+ * costs as much as a room clash with the whole student body (see EvaluationContext.blockedPenalty).
+ *
+ * A TimeGrid doesn't change once it is built, so every problem can share the same one.
+ */
+public class TimeGrid {
+
+	/**
+	 * The grid of the original problems: 5 days of the 4 slots in ScheduleChoice.times, nothing blocked.
+	 */
+	public static final TimeGrid DEFAULT = new TimeGrid(5, ScheduleChoice.times);
+
+	private final int days;
+	private final String[] slotNames;
+	private final boolean[] blocked; //blocked[cell]: no exam may be in that time cell
+	private final int[] openCells; //the time cells that are not blocked, in order
+
+	/**
+	 * A grid with nothing blocked and slots named after their start times, like ScheduleChoice.times.
+	 */
+	public TimeGrid(int pDays, String[] pSlotNames) {
+		this(pDays, pSlotNames, new int[0]);
+	}
+
+	/**
+	 * @param pDays the days of the exam period
+	 * @param pSlotNames the name of every slot of a day (its start time, "8:30", "12:00"...)
+	 * @param pBlockedCells the time cells (day * slots + slot) no exam may go to
+	 * @throws IllegalArgumentException if there are no days or no slots, a blocked cell is out of the grid or every cell is blocked
+	 */
+	public TimeGrid(int pDays, String[] pSlotNames, int[] pBlockedCells) {
+		if (pDays < 1 || pSlotNames.length < 1)
+			throw new IllegalArgumentException("A time grid needs at least one day and one slot, not " + pDays + " x " + pSlotNames.length);
+		days = pDays;
+		slotNames = pSlotNames.clone();
+		blocked = new boolean[days * slotNames.length];
+		int open = blocked.length;
+		for (int t : pBlockedCells) {
+			if (t < 0 || t >= blocked.length)
+				throw new IllegalArgumentException("Blocked cell " + t + " is not in a grid of " + blocked.length + " cells");
+			if (!blocked[t])
+				open--;
+			blocked[t] = true;
+		}
+		if (open == 0)
+			throw new IllegalArgumentException("Every cell of the time grid is blocked");
+		openCells = new int[open];
+		for (int t = 0, k = 0; t < blocked.length; t++)
+			if (!blocked[t])
+				openCells[k++] = t;
+	}
+
+	/**
+	 * A grid of pSlots slots a day, named "slot 0", "slot 1"... (the ones ScheduleChoice.times has keep their names).
+	 */
+	public static TimeGrid ofSize(int pDays, int pSlots, int[] pBlockedCells) {
+		String[] names = new String[pSlots];
+		for (int s = 0; s < pSlots; s++)
+			names[s] = ScheduleChoice.slotName(s);
+		return new TimeGrid(pDays, names, pBlockedCells);
+	}
+
+	public int getDays() {
+		return days;
+	}
+
+	public int getSlots() {
+		return slotNames.length;
+	}
+
+	/**
+	 * @return days * slots
+	 */
+	public int getCellCount() {
+		return blocked.length;
+	}
+
+	public String getSlotName(int pSlot) {
+		return slotNames[pSlot];
+	}
+
+	public boolean isBlocked(int pCell) {
+		return blocked[pCell];
+	}
+
+	public boolean isBlocked(int pDay, int pSlot) {
+		return blocked[pDay * slotNames.length + pSlot];
+	}
+
+	/**
+	 * @return true if any cell is blocked
+	 */
+	public boolean hasBlockedCells() {
+		return openCells.length < blocked.length;
+	}
+
+	public int getOpenCellCount() {
+		return openCells.length;
+	}
+
+	/**
+	 * @return the k-th open time cell
+	 */
+	public int getOpenCell(int k) {
+		return openCells[k];
+	}
+
+	/**
+	 * @return a uniformly random time cell that is not blocked
+	 */
+	public int randomOpenCell(Random r) {
+		return openCells[r.nextInt(openCells.length)];
+	}
+
+	public String toString() {
+		return days + " days x " + slotNames.length + " slots" + (hasBlockedCells() ? ", " + (blocked.length - openCells.length) + " cells blocked" : "");
+	}
+}
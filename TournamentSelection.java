@@ -0,0 +1,37 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * k-tournament selection: draws k individuals at random and returns the one with the fewest violations. O(k) per pick, nothing to prepare.
+ */
+public class TournamentSelection implements SelectionStrategy {
+
+	private final int tournamentSize;
+
+	private int[] fitness;
+
+	private int size;
+
+	/**
+	 * @param pTournamentSize how many individuals compete in each tournament. 2 is gentle, bigger values favour the best ones more.
+	 */
+	public TournamentSelection(int pTournamentSize) {
+		tournamentSize = pTournamentSize;
+	}
+
+	public void prepare(int[] pFitness, int pSize, Random r) {
+		fitness = pFitness;
+		size = pSize;
+	}
+
+	public int select(Random r) {
+		int winner = r.nextInt(size);
+		for (int i = 1; i < tournamentSize; i++) {
+			int challenger = r.nextInt(size);
+			if (fitness[challenger] < fitness[winner])
+				winner = challenger;
+		}
+		return winner;
+	}
+}
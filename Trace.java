@@ -0,0 +1,173 @@
+package scheduler;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Diagnostics for the model classes and the engines, without System.out or System.err in the hot paths. Printing takes the lock of the
+ * PrintStream, so a single println in an inner loop serialises every thread of a parallel search.
+ *
+ * A message is only built if its level is on, so hot paths guard it:
+ *
+ * if (Trace.isOn(Trace.DEBUG)) Trace.log(Trace.DEBUG, "Moved " + course);
+ *
+ * With ENABLED false the guard is a compile-time constant and javac leaves the whole statement out. Otherwise it is one read of a volatile
+ * int. The level comes from the system property scheduler.trace (off, warn, info or debug; warn if not given) and can be changed with
+ * setLevel().
+ *
+ * Messages go into a fixed-size ring buffer and a background thread prints them to System.err. Logging never blocks and never waits for the
+ * console: if the buffer is full the message is dropped, and the writer says how many were lost.
+ */
+public class Trace {
+
+	/** Compile-time switch: false removes every guarded trace statement from the bytecode. */
+	public static final boolean ENABLED = true;
+
+	/* Levels: */
+	public static final int OFF = 0;
+	public static final int WARN = 1;
+	public static final int INFO = 2;
+	public static final int DEBUG = 3;
+
+	private static final String[] LEVEL_NAMES = { "off", "warn", "info", "debug" };
+	private static final int CAPACITY = 1 << 12; //Messages the ring buffer holds. A power of 2.
+	private static final int MASK = CAPACITY - 1;
+	private static final long IDLE_NANOS = 1000000; //How long the writer sleeps when the buffer is empty.
+
+	private static volatile int level = parseLevel(System.getProperty("scheduler.trace"));
+
+	/*
+	 * The ring buffer, a bounded multi-producer queue (after Dmitry Vyukov's): sequence[i] says whether slot i is free for the ticket
+	 * sequence[i] (a producer may write it) or holds the message of ticket sequence[i] - 1 (the writer may read it).
+	 */
+	private static final String[] messages = new String[CAPACITY];
+	private static final AtomicLongArray sequence = new AtomicLongArray(CAPACITY);
+	private static final AtomicLong tail = new AtomicLong(); //next ticket to hand out to a producer
+	private static final AtomicLong dropped = new AtomicLong(); //messages lost because the buffer was full
+	private static long head = 0; //next ticket to print, only touched by the writer thread
+	private static volatile boolean stopping = false;
+	private static volatile Thread writer = null;
+
+	static {
+		for (int i = 0; i < CAPACITY; i++)
+			sequence.set(i, i);
+	}
+
+	private Trace() {
+	}
+
+	private static int parseLevel(String pName) {
+		if (pName == null)
+			return WARN;
+		for (int i = 0; i < LEVEL_NAMES.length; i++)
+			if (LEVEL_NAMES[i].equalsIgnoreCase(pName.trim()))
+				return i;
+		return WARN;
+	}
+
+	/**
+	 * @return true if messages of that level are printed. Check it before building a message.
+	 */
+	public static boolean isOn(int pLevel) {
+		return ENABLED && pLevel <= level;
+	}
+
+	public static void setLevel(int pLevel) {
+		level = pLevel;
+	}
+
+	/**
+	 * A warning, for paths that are not hot (the message is built even if warnings are off).
+	 */
+	public static void warn(String pMessage) {
+		if (isOn(WARN))
+			log(WARN, pMessage);
+	}
+
+	/**
+	 * Queues a message for the writer thread. Never blocks: if the ring buffer is full, the message is dropped.
+	 */
+	public static void log(int pLevel, String pMessage) {
+		if (!isOn(pLevel))
+			return;
+		if (writer == null)
+			startWriter();
+		String message = "[" + LEVEL_NAMES[pLevel] + "] " + pMessage;
+		long ticket = tail.get();
+		while (true) {
+			int slot = (int) (ticket & MASK);
+			long difference = sequence.get(slot) - ticket;
+			if (difference == 0) {
+				if (tail.compareAndSet(ticket, ticket + 1)) {
+					messages[slot] = message;
+					sequence.set(slot, ticket + 1); //Publishes the message to the writer.
+					return;
+				}
+				ticket = tail.get();
+			} else if (difference < 0) {
+				dropped.incrementAndGet(); //Full: the writer hasn't freed this slot yet.
+				return;
+			} else {
+				ticket = tail.get(); //Another producer took this ticket.
+			}
+		}
+	}
+
+	private static synchronized void startWriter() {
+		if (writer != null)
+			return;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "trace writer");
+		thread.setDaemon(true);
+		writer = thread;
+		thread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				stopping = true;
+				try {
+					writer.join(1000);
+				} catch (InterruptedException ignored) {
+				}
+			}
+		}, "trace flush"));
+	}
+
+	/**
+	 * Prints the messages in the order they were queued, until the JVM shuts down and the buffer is empty.
+	 */
+	private static void writeLoop() {
+		PrintStream out = System.err;
+		long reported = 0;
+		while (true) {
+			boolean wrote = false;
+			while (true) {
+				int slot = (int) (head & MASK);
+				if (sequence.get(slot) != head + 1)
+					break;
+				String message = messages[slot];
+				messages[slot] = null;
+				sequence.set(slot, head + CAPACITY); //Frees the slot for the ticket one lap later.
+				head++;
+				out.println(message);
+				wrote = true;
+			}
+			long lost = dropped.get();
+			if (lost > reported) {
+				out.println("[trace] " + (lost - reported) + " messages dropped, the buffer was full");
+				reported = lost;
+				wrote = true;
+			}
+			if (wrote)
+				out.flush();
+			else if (stopping)
+				return;
+			else
+				LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+}
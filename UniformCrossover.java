@@ -0,0 +1,21 @@
+package scheduler;
+
+import java.util.Random;
+
+/**
+ * Every course comes from the mother or the father with the same chance, independently of the other courses.
+ */
+public class UniformCrossover implements CrossoverOperator {
+
+	public void prepare(EvaluationContext pContext) {
+	}
+
+	public void crossover(ScheduleChoice[] pMother, ScheduleChoice[] pFather, ScheduleChoice[] pChild, Random r) {
+		for (int k = 0; k < pChild.length; k++) {
+			if (r.nextBoolean())
+				pChild[k] = pMother[k]; //Use mother schedule
+			else
+				pChild[k] = pFather[k]; //Use father schedule
+		}
+	}
+}